@@ -23,6 +23,7 @@ public class HttpEvent implements Event
 	private HttpEventSourceType sourceType;
 	private Request request;
 	private ResponseReplicate response;
+	private long nanoTime;
 	
 	
 	// CONSTRUCTOR	---------------------------
@@ -38,6 +39,7 @@ public class HttpEvent implements Event
 		this.sourceType = HttpEventSourceType.REQUEST;
 		this.request = request;
 		this.response = null;
+		this.nanoTime = System.nanoTime();
 	}
 	
 	/**
@@ -51,6 +53,21 @@ public class HttpEvent implements Event
 		this.sourceType = HttpEventSourceType.RESPONSE;
 		this.request = null;
 		this.response = response;
+		this.nanoTime = System.nanoTime();
+	}
+	
+	/**
+	 * Creates a new HttpEvent based on the given response. The request the response 
+	 * answers is included so that the listeners can tell which request the response belongs 
+	 * to.
+	 * @param response The response that caused the event
+	 * @param request The request the response answers
+	 * @param type The type of event caused by the response
+	 */
+	public HttpEvent(ResponseReplicate response, Request request, HttpEventType type)
+	{
+		this(response, type);
+		this.request = request;
 	}
 	
 	
@@ -69,7 +86,8 @@ public class HttpEvent implements Event
 	// OTHER METHODS	----------------------
 	
 	/**
-	 * @return The request associated with the event (if applicable)
+	 * @return The request associated with the event (if applicable). For response events, 
+	 * this is the request the response answers, if known.
 	 */
 	public Request getRequest()
 	{
@@ -100,6 +118,16 @@ public class HttpEvent implements Event
 		return this.sourceType;
 	}
 	
+	/**
+	 * @return The value of {@link System#nanoTime()} at the time the event was created. 
+	 * The time can be used for measuring the time between events even when the events are 
+	 * delivered asynchronously.
+	 */
+	public long getNanoTime()
+	{
+		return this.nanoTime;
+	}
+	
 	/**
 	 * Creates a new event selector that will only select events with the given source
 	 * @param source The source of the events
@@ -1,5 +1,10 @@
 package nexus_event;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
 import genesis_event.EventSelector;
 import genesis_event.Handler;
 import genesis_event.HandlerRelay;
@@ -7,7 +12,10 @@ import genesis_event.HandlerType;
 import genesis_event.StrictEventSelector;
 
 /**
- * These handlers inform multiple HttpEventListeners about http events
+ * These handlers inform multiple HttpEventListeners about http events. By default, the 
+ * listeners are informed in the thread that creates the event. The handler can also be made 
+ * to deliver the events asynchronously in a separate thread so that slow listeners don't 
+ * slow down the requests.
  * @author Mikko Hilpinen
  * @since 2.5.2015
  */
@@ -15,9 +23,21 @@ public class HttpEventListenerHandler extends Handler<HttpEventListener> impleme
 		HttpEventListener
 {
 	// ATTRIBUTES	----------------------------
-
+	
+	private static final long BLOCK_WAIT_NANOS = 50000;
+	private static final long IDLE_WAIT_NANOS = 10000000;
+	
 	private EventSelector<HttpEvent> eventSelector;
-	private HttpEvent lastEvent;
+	// The event being delivered is kept per thread so that multiple threads can deliver 
+	// events at the same time
+	private ThreadLocal<Delivery> currentDelivery;
+	private Object modeLock;
+	
+	private volatile EventRingBuffer buffer;
+	private volatile OverflowPolicy overflowPolicy;
+	private volatile DispatcherThread dispatcher;
+	private int sampleInterval;
+	private AtomicLong droppedEvents, sampledEvents, sampleCounter;
 	
 	
 	// CONSTRUCTOR	----------------------------
@@ -30,7 +50,7 @@ public class HttpEventListenerHandler extends Handler<HttpEventListener> impleme
 	public HttpEventListenerHandler(boolean autoDeath, HandlerRelay superHandlers)
 	{
 		super(autoDeath, superHandlers);
-
+		
 		initialize();
 	}
 	
@@ -62,42 +82,448 @@ public class HttpEventListenerHandler extends Handler<HttpEventListener> impleme
 	
 	
 	// IMPLEMENTED METHODS	----------------------
-
+	
 	@Override
 	public EventSelector<HttpEvent> getHttpEventSelector()
 	{
 		return this.eventSelector;
 	}
-
+	
 	@Override
 	public void onHttpEvent(HttpEvent e)
 	{
-		// Informs the listeners that are interested
-		this.lastEvent = e;
-		handleObjects(true);
+		EventRingBuffer buffer = this.buffer;
+		
+		// In synchronous mode, informs the listeners right away
+		if (buffer == null)
+			dispatch(e);
+		else
+			offer(buffer, e);
 	}
-
+	
 	@Override
 	public HandlerType getHandlerType()
 	{
 		return NexusHandlerType.HTTPEVENTHANDLER;
 	}
-
+	
 	@Override
 	protected boolean handleObject(HttpEventListener l)
 	{
 		// Informs only objects that are interested
-		if (l.getHttpEventSelector().selects(this.lastEvent))
-			l.onHttpEvent(this.lastEvent);
+		Delivery delivery = this.currentDelivery.get();
+		if (l.getHttpEventSelector().selects(delivery.event))
+		{
+			delivery.selected = true;
+			if (delivery.inform)
+				l.onHttpEvent(delivery.event);
+		}
 		
 		return true;
 	}
 	
 	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How many events were dropped because the event buffer was full
+	 */
+	public long getDroppedEventAmount()
+	{
+		return this.droppedEvents.get();
+	}
+	
+	/**
+	 * @return How many events were left undelivered because of sampling
+	 */
+	public long getSampledOutEventAmount()
+	{
+		return this.sampledEvents.get();
+	}
+	
+	/**
+	 * @return Does the handler currently deliver the events in a separate thread
+	 */
+	public boolean isAsynchronous()
+	{
+		return this.buffer != null;
+	}
+	
+	
 	// OTHER METHODS	-----------------------
 	
+	/**
+	 * Checks whether any of the current listeners would be informed about the given event. 
+	 * The listeners aren't informed. This can be used for avoiding the creation of costly 
+	 * events no one is interested in.
+	 * @param e An event
+	 * @return Would any of the listeners be informed about the event
+	 */
+	public boolean hasListenersFor(HttpEvent e)
+	{
+		return handle(new Delivery(e, false));
+	}
+	
+	/**
+	 * Makes the handler deliver the events in a separate dispatcher thread. The events are 
+	 * stored into a bounded buffer until they are delivered. If the handler is already 
+	 * asynchronous, nothing happens.
+	 * @param bufferSize How many events can wait for delivery at once. The size is rounded 
+	 * up to the next power of two.
+	 * @param overflowPolicy What should be done when the buffer fills up
+	 * @param sampleInterval When the SAMPLE policy is used, only every n:th event is 
+	 * accepted while the buffer is over half full
+	 */
+	public void startAsynchronousDispatch(int bufferSize, OverflowPolicy overflowPolicy, 
+			int sampleInterval)
+	{
+		if (bufferSize <= 0 || sampleInterval <= 0)
+			throw new IllegalArgumentException(
+					"Buffer size and sample interval must be positive");
+		
+		// The handler's own monitor isn't used since the handled objects may be locked with it
+		synchronized (this.modeLock)
+		{
+			if (this.buffer != null)
+				return;
+			
+			this.overflowPolicy = overflowPolicy;
+			this.sampleInterval = sampleInterval;
+			this.dispatcher = new DispatcherThread(new EventRingBuffer(bufferSize));
+			this.buffer = this.dispatcher.buffer;
+			this.dispatcher.start();
+		}
+	}
+	
+	/**
+	 * Makes the handler deliver the events in a separate dispatcher thread. The events are 
+	 * stored into a bounded buffer until they are delivered. If the handler is already 
+	 * asynchronous, nothing happens.
+	 * @param bufferSize How many events can wait for delivery at once. The size is rounded 
+	 * up to the next power of two.
+	 * @param overflowPolicy What should be done when the buffer fills up
+	 */
+	public void startAsynchronousDispatch(int bufferSize, OverflowPolicy overflowPolicy)
+	{
+		startAsynchronousDispatch(bufferSize, overflowPolicy, 10);
+	}
+	
+	/**
+	 * Makes the handler deliver the events synchronously again. The events that are still 
+	 * in the buffer are delivered before this method returns.
+	 */
+	public void stopAsynchronousDispatch()
+	{
+		DispatcherThread dispatcher;
+		synchronized (this.modeLock)
+		{
+			dispatcher = this.dispatcher;
+			if (dispatcher == null)
+				return;
+			
+			// New events are delivered synchronously from this point on
+			this.buffer = null;
+			this.dispatcher = null;
+		}
+		
+		dispatcher.end();
+		try
+		{
+			dispatcher.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		// Events that were added while the dispatcher was stopping are delivered here
+		HttpEvent e = dispatcher.buffer.poll();
+		while (e != null)
+		{
+			dispatcher.deliver(e);
+			e = dispatcher.buffer.poll();
+		}
+	}
+	
 	private void initialize()
 	{
 		this.eventSelector = new StrictEventSelector<>();
+		this.currentDelivery = new ThreadLocal<>();
+		this.modeLock = new Object();
+		this.droppedEvents = new AtomicLong();
+		this.sampledEvents = new AtomicLong();
+		this.sampleCounter = new AtomicLong();
+	}
+	
+	private void dispatch(HttpEvent e)
+	{
+		handle(new Delivery(e, true));
+	}
+	
+	private boolean handle(Delivery delivery)
+	{
+		// A listener may create new events while the previous one is being delivered
+		Delivery previousDelivery = this.currentDelivery.get();
+		this.currentDelivery.set(delivery);
+		try
+		{
+			handleObjects(true);
+		}
+		finally
+		{
+			if (previousDelivery == null)
+				this.currentDelivery.remove();
+			else
+				this.currentDelivery.set(previousDelivery);
+		}
+		
+		return delivery.selected;
+	}
+	
+	private void offer(EventRingBuffer buffer, HttpEvent e)
+	{
+		OverflowPolicy policy = this.overflowPolicy;
+		
+		// When sampling, only some of the events are accepted once the buffer starts to fill
+		if (policy == OverflowPolicy.SAMPLE && buffer.size() > buffer.capacity() / 2 && 
+				this.sampleCounter.incrementAndGet() % this.sampleInterval != 0)
+		{
+			this.sampledEvents.incrementAndGet();
+			return;
+		}
+		
+		while (!buffer.offer(e))
+		{
+			// If the asynchronous dispatch was stopped while waiting, the event is delivered 
+			// right away instead
+			if (policy == OverflowPolicy.BLOCK && this.buffer != buffer)
+			{
+				dispatch(e);
+				return;
+			}
+			else if (policy != OverflowPolicy.BLOCK)
+			{
+				this.droppedEvents.incrementAndGet();
+				return;
+			}
+			LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+		}
+		
+		DispatcherThread dispatcher = this.dispatcher;
+		if (dispatcher != null)
+			dispatcher.wakeUp();
+	}
+	
+	
+	// ENUMERATIONS	---------------------------
+	
+	/**
+	 * The overflow policy defines what is done to new events when the asynchronous event 
+	 * buffer is full
+	 * @author Mikko Hilpinen
+	 * @since 17.10.2026
+	 */
+	public static enum OverflowPolicy
+	{
+		/**
+		 * The new event is dropped and counted
+		 */
+		DROP, 
+		/**
+		 * The thread creating the event waits until there is room in the buffer
+		 */
+		BLOCK, 
+		/**
+		 * Once the buffer is over half full, only some of the new events are accepted. 
+		 * Events are dropped if the buffer fills up regardless.
+		 */
+		SAMPLE;
+	}
+	
+	
+	// SUBCLASSES	---------------------------
+	
+	private static class Delivery
+	{
+		// ATTRIBUTES	-----------------------
+		
+		private final HttpEvent event;
+		private final boolean inform;
+		private boolean selected;
+		
+		
+		// CONSTRUCTOR	-----------------------
+		
+		public Delivery(HttpEvent event, boolean inform)
+		{
+			this.event = event;
+			this.inform = inform;
+			this.selected = false;
+		}
+	}
+	
+	/**
+	 * A bounded multi-producer, single-consumer ring buffer. Each slot has a sequence number 
+	 * that tells whether the slot is ready to be written or read, so no locks are required.
+	 */
+	private static class EventRingBuffer
+	{
+		// ATTRIBUTES	-----------------------
+		
+		private final int mask;
+		private final AtomicReferenceArray<HttpEvent> events;
+		private final AtomicLongArray sequences;
+		private final AtomicLong tail;
+		private volatile long head;
+		
+		
+		// CONSTRUCTOR	-----------------------
+		
+		public EventRingBuffer(int minCapacity)
+		{
+			int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+			
+			this.mask = capacity - 1;
+			this.events = new AtomicReferenceArray<>(capacity);
+			this.sequences = new AtomicLongArray(capacity);
+			for (int i = 0; i < capacity; i++)
+			{
+				this.sequences.set(i, i);
+			}
+			this.tail = new AtomicLong();
+			this.head = 0;
+		}
+		
+		
+		// OTHER METHODS	-------------------
+		
+		public int capacity()
+		{
+			return this.mask + 1;
+		}
+		
+		public int size()
+		{
+			return (int) Math.max(0, this.tail.get() - this.head);
+		}
+		
+		public boolean offer(HttpEvent e)
+		{
+			while (true)
+			{
+				long position = this.tail.get();
+				int index = (int) position & this.mask;
+				long difference = this.sequences.get(index) - position;
+				
+				// The slot is free, tries to claim it
+				if (difference == 0)
+				{
+					if (this.tail.compareAndSet(position, position + 1))
+					{
+						this.events.set(index, e);
+						this.sequences.set(index, position + 1);
+						return true;
+					}
+				}
+				// The slot hasn't been read yet, so the buffer is full
+				else if (difference < 0)
+					return false;
+				// Otherwise another thread claimed the slot and the position is checked again
+			}
+		}
+		
+		public HttpEvent poll()
+		{
+			// Only the dispatcher thread reads the buffer
+			long position = this.head;
+			int index = (int) position & this.mask;
+			if (this.sequences.get(index) != position + 1)
+				return null;
+			
+			HttpEvent e = this.events.get(index);
+			this.events.set(index, null);
+			this.sequences.set(index, position + this.mask + 1);
+			this.head = position + 1;
+			
+			return e;
+		}
+	}
+	
+	private class DispatcherThread extends Thread
+	{
+		// ATTRIBUTES	-----------------------
+		
+		private final EventRingBuffer buffer;
+		private volatile boolean running, waiting;
+		
+		
+		// CONSTRUCTOR	-----------------------
+		
+		public DispatcherThread(EventRingBuffer buffer)
+		{
+			super("Nexus event dispatcher");
+			
+			this.buffer = buffer;
+			this.running = true;
+			this.waiting = false;
+			setDaemon(true);
+		}
+		
+		
+		// IMPLEMENTED METHODS	---------------
+		
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				HttpEvent e = this.buffer.poll();
+				if (e != null)
+				{
+					deliver(e);
+					continue;
+				}
+				
+				// Once ended, stops when the buffer has been emptied
+				if (!this.running)
+					break;
+				
+				// Waits for new events. The buffer is checked once more after announcing the
+				// wait so that a wake up call isn't missed.
+				this.waiting = true;
+				if (this.buffer.size() == 0 && this.running)
+					LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+				this.waiting = false;
+			}
+		}
+		
+		
+		// OTHER METHODS	-------------------
+		
+		public void wakeUp()
+		{
+			if (this.waiting)
+				LockSupport.unpark(this);
+		}
+		
+		public void end()
+		{
+			this.running = false;
+			LockSupport.unpark(this);
+		}
+		
+		private void deliver(HttpEvent e)
+		{
+			// A failing listener mustn't stop the delivery of other events
+			try
+			{
+				dispatch(e);
+			}
+			catch (RuntimeException exception)
+			{
+				System.err.println("Failed to deliver an http event");
+				exception.printStackTrace();
+			}
+		}
 	}
 }
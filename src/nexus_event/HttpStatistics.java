@@ -0,0 +1,246 @@
+package nexus_event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nexus_http.MethodType;
+
+/**
+ * HttpStatistics is a snapshot of the request statistics collected by a 
+ * {@link HttpStatisticsRecorder}. The requests are grouped by their method, path template 
+ * and response status. All durations are in nanoseconds.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class HttpStatistics
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private final long durationNanos;
+	private final List<Entry> entries;
+	private final Entry total;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new snapshot
+	 * @param durationNanos How long the statistics were collected
+	 * @param entries The statistics of each request group
+	 * @param total The statistics of all requests combined
+	 */
+	public HttpStatistics(long durationNanos, List<Entry> entries, Entry total)
+	{
+		this.durationNanos = durationNanos;
+		this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+		this.total = total;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("Statistics collected for %.1f s%n", 
+				this.durationNanos / 1000000000.0));
+		s.append(String.format("%-8s %-40s %6s %10s %10s %10s %10s %10s %10s%n", "Method", 
+				"Path", "Status", "Requests", "Req/s", "p50 ms", "p99 ms", "p99.9 ms", 
+				"Max ms"));
+		for (Entry entry : this.entries)
+		{
+			s.append(entry);
+			s.append(String.format("%n"));
+		}
+		s.append(this.total);
+		s.append(String.format("%n"));
+		
+		return s.toString();
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How long the statistics were collected, in nanoseconds
+	 */
+	public long getDurationNanos()
+	{
+		return this.durationNanos;
+	}
+	
+	/**
+	 * @return The statistics of each request group, the busiest groups first
+	 */
+	public List<Entry> getEntries()
+	{
+		return this.entries;
+	}
+	
+	/**
+	 * @return The statistics of all requests combined. The method, the path template and 
+	 * the status of the entry are null / 0.
+	 */
+	public Entry getTotal()
+	{
+		return this.total;
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	/**
+	 * Entry contains the statistics of a single group of requests
+	 * @author Mikko Hilpinen
+	 * @since 17.10.2026
+	 */
+	public static class Entry
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final MethodType method;
+		private final String pathTemplate;
+		private final int status;
+		private final long count, p50, p99, p999, max;
+		private final double mean, requestsPerSecond;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		/**
+		 * Creates a new entry from the values recorded into a histogram
+		 * @param method The method of the requests
+		 * @param pathTemplate The path template of the requests
+		 * @param status The status code of the responses
+		 * @param histogram The histogram that contains the recorded latencies
+		 * @param durationNanos How long the latencies were recorded
+		 */
+		public Entry(MethodType method, String pathTemplate, int status, 
+				LatencyHistogram histogram, long durationNanos)
+		{
+			long[] percentiles = histogram.getValuesAtPercentiles(50, 99, 99.9);
+			
+			this.method = method;
+			this.pathTemplate = pathTemplate;
+			this.status = status;
+			this.count = histogram.getCount();
+			this.p50 = percentiles[0];
+			this.p99 = percentiles[1];
+			this.p999 = percentiles[2];
+			this.max = histogram.getMax();
+			this.mean = histogram.getMean();
+			if (durationNanos <= 0)
+				this.requestsPerSecond = 0;
+			else
+				this.requestsPerSecond = this.count / (durationNanos / 1000000000.0);
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public String toString()
+		{
+			String method = "All";
+			if (this.method != null)
+				method = this.method.toString();
+			String path = "";
+			if (this.pathTemplate != null)
+				path = this.pathTemplate;
+			String status = "";
+			if (this.status != 0)
+				status = Integer.toString(this.status);
+			
+			return String.format("%-8s %-40s %6s %10d %10.1f %10.3f %10.3f %10.3f %10.3f", 
+					method, path, status, this.count, this.requestsPerSecond, 
+					this.p50 / 1000000.0, this.p99 / 1000000.0, this.p999 / 1000000.0, 
+					this.max / 1000000.0);
+		}
+		
+		
+		// GETTERS & SETTERS	--------------------
+		
+		/**
+		 * @return The method of the requests. Null for the combined statistics.
+		 */
+		public MethodType getMethod()
+		{
+			return this.method;
+		}
+		
+		/**
+		 * @return The path template of the requests. Null for the combined statistics.
+		 */
+		public String getPathTemplate()
+		{
+			return this.pathTemplate;
+		}
+		
+		/**
+		 * @return The status code of the responses. 0 for the combined statistics.
+		 */
+		public int getStatus()
+		{
+			return this.status;
+		}
+		
+		/**
+		 * @return How many requests there were
+		 */
+		public long getCount()
+		{
+			return this.count;
+		}
+		
+		/**
+		 * @return How many requests there were per second on average
+		 */
+		public double getRequestsPerSecond()
+		{
+			return this.requestsPerSecond;
+		}
+		
+		/**
+		 * @return The median latency
+		 */
+		public long getP50()
+		{
+			return this.p50;
+		}
+		
+		/**
+		 * @return The latency under which 99% of the requests were handled
+		 */
+		public long getP99()
+		{
+			return this.p99;
+		}
+		
+		/**
+		 * @return The latency under which 99.9% of the requests were handled
+		 */
+		public long getP999()
+		{
+			return this.p999;
+		}
+		
+		/**
+		 * @return The longest latency
+		 */
+		public long getMax()
+		{
+			return this.max;
+		}
+		
+		/**
+		 * @return The average latency
+		 */
+		public double getMean()
+		{
+			return this.mean;
+		}
+	}
+}
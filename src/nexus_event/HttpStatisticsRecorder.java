@@ -0,0 +1,219 @@
+package nexus_event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import genesis_event.EventSelector;
+import genesis_event.HandlerRelay;
+import genesis_util.SimpleHandled;
+import nexus_event.HttpEvent.HttpEventSourceType;
+import nexus_event.HttpEvent.HttpEventType;
+import nexus_http.MethodType;
+import nexus_http.Request;
+
+/**
+ * HttpStatisticsRecorder measures how long it takes for the server to handle requests. When 
+ * a response is sent, the recorder records the time since the request it answers was 
+ * received. The recorder doesn't need to keep track of the requests being handled, so 
+ * requests that never receive a response don't take up any memory. The latencies are 
+ * grouped by the request method, path template and response status. The path template 
+ * contains the first few parts of the request path, the rest being replaced with "*", so 
+ * that requests for different entities of the same kind fall into the same group. The 
+ * recorder can be used from multiple threads at once and also works when the events are 
+ * delivered asynchronously.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class HttpStatisticsRecorder extends SimpleHandled implements HttpEventListener
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private EventSelector<HttpEvent> eventSelector;
+	private int templateDepth;
+	private volatile ConcurrentMap<String, Series> series;
+	private volatile LatencyHistogram totalHistogram;
+	private volatile long startNanos;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new recorder
+	 * @param handler The handler that will inform the recorder about http events
+	 * @param templateDepth How many parts of the request path are used in the path 
+	 * templates
+	 */
+	public HttpStatisticsRecorder(HttpEventListenerHandler handler, int templateDepth)
+	{
+		super(null);
+		initialize(templateDepth);
+		handler.add(this);
+	}
+	
+	/**
+	 * Creates a new recorder
+	 * @param handlers The handlers that will handle this recorder
+	 * @param templateDepth How many parts of the request path are used in the path 
+	 * templates
+	 */
+	public HttpStatisticsRecorder(HandlerRelay handlers, int templateDepth)
+	{
+		super(handlers);
+		initialize(templateDepth);
+	}
+	
+	/**
+	 * Creates a new recorder. Remember to add the recorder to a httpEventListenerHandler
+	 * @param templateDepth How many parts of the request path are used in the path 
+	 * templates
+	 */
+	public HttpStatisticsRecorder(int templateDepth)
+	{
+		super(null);
+		initialize(templateDepth);
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public EventSelector<HttpEvent> getHttpEventSelector()
+	{
+		return this.eventSelector;
+	}
+	
+	@Override
+	public void onHttpEvent(HttpEvent e)
+	{
+		Request request = e.getRequest();
+		if (request == null || e.getSourceType() != HttpEventSourceType.RESPONSE)
+			return;
+		
+		long latency = e.getNanoTime() - request.getCreationNanoTime();
+		getSeries(request, e.getResponse().getStatusCode()).histogram.record(latency);
+		this.totalHistogram.record(latency);
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Creates a snapshot of the statistics recorded so far
+	 * @return The statistics since the recorder was created or last reset
+	 */
+	public HttpStatistics getStatistics()
+	{
+		long duration = System.nanoTime() - this.startNanos;
+		
+		List<HttpStatistics.Entry> entries = new ArrayList<>();
+		for (Series series : this.series.values())
+		{
+			entries.add(new HttpStatistics.Entry(series.method, series.pathTemplate, 
+					series.status, series.histogram, duration));
+		}
+		Collections.sort(entries, new BusiestFirstComparator());
+		
+		return new HttpStatistics(duration, entries, new HttpStatistics.Entry(null, null, 0, 
+				this.totalHistogram, duration));
+	}
+	
+	/**
+	 * Clears the recorded statistics. The requests that are being handled at the time are 
+	 * still recorded once their responses are sent.
+	 */
+	public void reset()
+	{
+		this.series = new ConcurrentHashMap<>();
+		this.totalHistogram = new LatencyHistogram();
+		this.startNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Creates a path template for the given request
+	 * @param request The request
+	 * @return The path template the request belongs to
+	 */
+	protected String createPathTemplate(Request request)
+	{
+		StringBuilder template = new StringBuilder();
+		for (int i = 0; i < request.getPathLength(); i++)
+		{
+			template.append('/');
+			if (i < this.templateDepth)
+				template.append(request.getPathPart(i));
+			else
+			{
+				// All the remaining parts are represented by a single "*"
+				template.append('*');
+				break;
+			}
+		}
+		
+		return template.toString();
+	}
+	
+	private Series getSeries(Request request, int status)
+	{
+		String pathTemplate = createPathTemplate(request);
+		String key = request.getMethod() + " " + pathTemplate + " " + status;
+		
+		ConcurrentMap<String, Series> seriesMap = this.series;
+		Series series = seriesMap.get(key);
+		if (series == null)
+		{
+			series = new Series(request.getMethod(), pathTemplate, status);
+			Series previous = seriesMap.putIfAbsent(key, series);
+			if (previous != null)
+				series = previous;
+		}
+		
+		return series;
+	}
+	
+	private void initialize(int templateDepth)
+	{
+		// Only the sent responses are needed since they contain the requests they answer
+		this.eventSelector = HttpEvent.getEventSelector(HttpEventType.SENT, 
+				HttpEventSourceType.RESPONSE);
+		this.templateDepth = templateDepth;
+		reset();
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class Series
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final MethodType method;
+		private final String pathTemplate;
+		private final int status;
+		private final LatencyHistogram histogram;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public Series(MethodType method, String pathTemplate, int status)
+		{
+			this.method = method;
+			this.pathTemplate = pathTemplate;
+			this.status = status;
+			this.histogram = new LatencyHistogram();
+		}
+	}
+	
+	private static class BusiestFirstComparator implements Comparator<HttpStatistics.Entry>
+	{
+		@Override
+		public int compare(HttpStatistics.Entry first, HttpStatistics.Entry second)
+		{
+			return Long.compare(second.getCount(), first.getCount());
+		}
+	}
+}
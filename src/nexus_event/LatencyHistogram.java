@@ -0,0 +1,167 @@
+package nexus_event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram records durations into logarithmic buckets that are each divided into 
+ * linear sub-buckets. The recorded values keep about three percent of their precision 
+ * while the histogram takes a fixed amount of memory. Values can be recorded from multiple 
+ * threads at once without locking.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class LatencyHistogram
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_AMOUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_MASK = SUB_BUCKET_AMOUNT - 1;
+	// 2^40 nanoseconds is a little over 18 minutes
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+	
+	private final AtomicLongArray counts;
+	private final AtomicLong totalCount, sum, max;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new empty histogram
+	 */
+	public LatencyHistogram()
+	{
+		this.counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+		this.totalCount = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How many values have been recorded
+	 */
+	public long getCount()
+	{
+		return this.totalCount.get();
+	}
+	
+	/**
+	 * @return The largest recorded value
+	 */
+	public long getMax()
+	{
+		return this.max.get();
+	}
+	
+	/**
+	 * @return The average of the recorded values. 0 if no values have been recorded.
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		if (count == 0)
+			return 0;
+		return this.sum.get() / (double) count;
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Records a new value. Negative values are recorded as 0 and values too large for the 
+	 * histogram as the largest trackable value.
+	 * @param value The value that is recorded
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+			value = 0;
+		else if (value > MAX_VALUE)
+			value = MAX_VALUE;
+		
+		this.counts.incrementAndGet(indexOf(value));
+		this.totalCount.incrementAndGet();
+		this.sum.addAndGet(value);
+		
+		long previousMax = this.max.get();
+		while (value > previousMax && !this.max.compareAndSet(previousMax, value))
+		{
+			previousMax = this.max.get();
+		}
+	}
+	
+	/**
+	 * Finds the values below which the given percentages of the recorded values fall. The 
+	 * values are searched in a single pass so that they are consistent with each other even 
+	 * when new values are being recorded at the same time.
+	 * @param percentiles The percentiles that are searched (between 0 and 100, ascending)
+	 * @return The highest value of the bucket each percentile falls into. 0 for each 
+	 * percentile if no values have been recorded.
+	 */
+	public long[] getValuesAtPercentiles(double... percentiles)
+	{
+		long[] counts = new long[this.counts.length()];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			counts[i] = this.counts.get(i);
+			total += counts[i];
+		}
+		
+		long[] values = new long[percentiles.length];
+		if (total == 0)
+			return values;
+		
+		int percentileIndex = 0;
+		long countSoFar = 0;
+		for (int i = 0; i < counts.length && percentileIndex < percentiles.length; i++)
+		{
+			countSoFar += counts[i];
+			while (percentileIndex < percentiles.length && countSoFar >= 
+					Math.ceil(total * percentiles[percentileIndex] / 100.0))
+			{
+				values[percentileIndex] = Math.min(highestValueAt(i), getMax());
+				percentileIndex ++;
+			}
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Finds the value below which the given percentage of the recorded values fall
+	 * @param percentile The percentile that is searched (between 0 and 100)
+	 * @return The highest value of the bucket the percentile falls into
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		return getValuesAtPercentiles(percentile)[0];
+	}
+	
+	private static int indexOf(long value)
+	{
+		// The smallest values each have their own bucket
+		if (value < SUB_BUCKET_AMOUNT)
+			return (int) value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & SUB_BUCKET_MASK);
+	}
+	
+	private static long highestValueAt(int index)
+	{
+		if (index < SUB_BUCKET_AMOUNT)
+			return index;
+		
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long lowest = (long) (SUB_BUCKET_AMOUNT + (index & SUB_BUCKET_MASK)) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -1,21 +1,27 @@
 package nexus_http;
 
 import java.io.IOException;
-import java.net.Socket;
-import java.util.Stack;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import nexus_event.HttpEvent;
 import nexus_event.HttpEvent.HttpEventType;
 import nexus_event.HttpEventListenerHandler;
+import nexus_http.ConnectionPool.PooledConnection;
 
-import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NoHttpResponseException;
-import org.apache.http.impl.DefaultBHttpClientConnection;
 import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.message.BasicLineFormatter;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpProcessorBuilder;
@@ -28,7 +34,11 @@ import org.apache.http.protocol.RequestUserAgent;
 import org.apache.http.util.EntityUtils;
 
 /**
- * Client is a simple tool with which one can make requests to a server
+ * Client is a simple tool with which one can make requests to a server. The client can be 
+ * shared between multiple threads, each request using its own connection from a connection 
+ * pool. The connections are kept open between the requests whenever the server allows it. 
+ * The requests can also be sent asynchronously, in which case they are handled by a single 
+ * non-blocking event loop shared by all the clients.
  * 
  * @author Mikko Hilpinen
  * @since 31.7.2014
@@ -37,12 +47,22 @@ public class Client
 {
 	// ATTRIBUTES	-------------------------------------------------------
 	
-	private String userAgent;
-	private String hostAddress;
-	private int hostPort;
-	private Stack<DefaultBHttpClientConnection> openConnections;
-	private boolean encode, reuse;
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+	private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+	private static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30000;
+	private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+	private static final int PIPELINE_WINDOW = 16;
+	private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+	
+	private HttpHost host;
+	private ConnectionPool connectionPool;
+	private HttpProcessor processor;
+	private HttpRequestExecutor executor;
+	private boolean encode;
 	private HttpEventListenerHandler listenerHandler;
+	private ClientEventLoop.Route asyncRoute;
+	private volatile ClientEventLoop asyncLoop;
+	private volatile ValidatorCache validatorCache;
 	
 	
 	// CONSTRUCTOR	-------------------------------------------------------
@@ -56,15 +76,43 @@ public class Client
 	 * @param encodeRequests Should the sent requests be encoded in UTF-8
 	 */
 	public Client(String userAgent, String hostAddress, int hostPort, boolean encodeRequests)
+	{
+		this(userAgent, hostAddress, hostPort, encodeRequests, new ConnectionPool( 
+				DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT_MILLIS, 
+				DEFAULT_LEASE_TIMEOUT_MILLIS));
+	}
+	
+	/**
+	 * Creates a new requester that will be able to make request to the given server. The 
+	 * connections are taken from the given pool, which may be shared with other clients.
+	 * 
+	 * @param userAgent The userAgent used in the requests
+	 * @param hostAddress The address (or ip) of the hosting server
+	 * @param hostPort The port used to connect to the server
+	 * @param encodeRequests Should the sent requests be encoded in UTF-8
+	 * @param connectionPool The pool that holds the connections
+	 */
+	public Client(String userAgent, String hostAddress, int hostPort, boolean encodeRequests, 
+			ConnectionPool connectionPool)
 	{
 		// Initializes attributes
-		this.userAgent = userAgent;
-		this.hostAddress = hostAddress;
-		this.hostPort = hostPort;
-		this.openConnections = new Stack<>();
+		this.host = new HttpHost(hostAddress, hostPort);
+		this.connectionPool = connectionPool;
 		this.encode = encodeRequests;
-		this.reuse = false;
 		this.listenerHandler = new HttpEventListenerHandler(false);
+		this.executor = new HttpRequestExecutor();
+		this.asyncRoute = new ClientEventLoop.Route(this.host, DEFAULT_MAX_CONNECTIONS);
+		this.asyncLoop = null;
+		this.validatorCache = null;
+		// The processor is immutable and can be used by multiple threads at once
+		this.processor = HttpProcessorBuilder.create()
+				.add(new RequestContent())
+				.add(new RequestTargetHost())
+				.add(new RequestConnControl())
+				.add(new RequestUserAgent(userAgent))
+				.add(new RequestExpectContinue(true))
+				.add(new RequestAcceptEncoding())
+				.add(new ResponseDecompressor()).build();
 	}
 	
 	
@@ -81,66 +129,39 @@ public class Client
 	public ResponseReplicate sendRequest(Request request) throws NoConnectionException, 
 			NoResponseException
 	{
-		// Initializes the connection statistics
-		HttpProcessor processor = HttpProcessorBuilder.create()
-				.add(new RequestContent())
-				.add(new RequestTargetHost())
-				.add(new RequestConnControl())
-				.add(new RequestUserAgent(this.userAgent))
-				.add(new RequestExpectContinue(true)).build();
-		
-		HttpRequestExecutor executor = new HttpRequestExecutor();
 		HttpCoreContext coreContext = HttpCoreContext.create();
-		HttpHost host = new HttpHost(this.hostAddress, this.hostPort);
-		coreContext.setTargetHost(host);
-
-		// Opens a new connection only if the old one isn't being reused
-		if (!this.reuse)
-			this.openConnections.push(new DefaultBHttpClientConnection(8 * 1024));
-		ConnectionReuseStrategy connectionStrategy = DefaultConnectionReuseStrategy.INSTANCE;
-		
-		// Creates a new connection if necessary
-		if (!this.openConnections.peek().isOpen())
-		{
-			Socket socket;
-			try
-			{
-				socket = new Socket(host.getHostName(), host.getPort());
-				this.openConnections.peek().bind(socket);
-			}
-			catch (IOException e)
-			{
-				throw new NoConnectionException(e);
-			}
-		}
-		
-		// Creates the request
-		HttpRequest httpRequest = request.toHttpRequest(this.encode);
-		getListenerHandler().onHttpEvent(new HttpEvent(request, HttpEventType.SENT));
+		coreContext.setTargetHost(this.host);
 		
+		// Everything after the lease happens inside the try so that the connection is 
+		// always released
+		PooledConnection connection = this.connectionPool.lease(this.host);
+		boolean reusable = false;
 		try
 		{
+			// Creates the request
+			HttpRequest httpRequest = request.toHttpRequest(this.encode);
+			ValidatorCache.Validation validation = prepareValidation(request, httpRequest);
+			getListenerHandler().onHttpEvent(new HttpEvent(request, HttpEventType.SENT));
+			
 			// Processes the request & response
-			executor.preProcess(httpRequest, processor, coreContext);
-			HttpResponse response = executor.execute(httpRequest, this.openConnections.peek(), 
-					coreContext);
+			this.executor.preProcess(httpRequest, this.processor, coreContext);
+			HttpResponse response = this.executor.execute(httpRequest, 
+					connection.getConnection(), coreContext);
 			
-			executor.postProcess(response, processor, coreContext);
+			this.executor.postProcess(response, this.processor, coreContext);
 			
 			ResponseReplicate replicate = new ResponseReplicate(response);
-			EntityUtils.consumeQuietly(response.getEntity());
+			if (validation != null)
+				replicate = validation.complete(replicate);
 			
-			// Closes the connection and quits
-			if (!connectionStrategy.keepAlive(response, coreContext))
-			{
-				closeLatesConnection();
-				this.reuse = false;
-			}
-			// Or continues the connection
-			else
-				this.reuse = true;
+			// The connection can be reused if the whole response was read and the server 
+			// agrees to keep the connection alive
+			EntityUtils.consume(response.getEntity());
+			reusable = DefaultConnectionReuseStrategy.INSTANCE.keepAlive(response, 
+					coreContext);
 			
-			getListenerHandler().onHttpEvent(new HttpEvent(replicate, HttpEventType.RECEIVED));
+			getListenerHandler().onHttpEvent(new HttpEvent(replicate, request, 
+					HttpEventType.RECEIVED));
 			return replicate;
 		}
 		catch (NoHttpResponseException e)
@@ -158,11 +179,130 @@ public class Client
 					request);
 			e.printStackTrace();
 		}
+		finally
+		{
+			this.connectionPool.release(connection, reusable);
+		}
 		
-		closeLatesConnection();
 		return null;
 	}
 	
+	/**
+	 * Performs multiple requests to the server. The requests are pipelined: a number of 
+	 * requests is written to a single connection before the responses are read, which saves 
+	 * a round trip for most of the requests. POST requests are not pipelined since they 
+	 * can't be safely sent again, instead they are sent once all the previous requests 
+	 * have been answered. If the server closes the connection in the middle of a pipeline, 
+	 * the remaining requests are sent one at a time.
+	 * @param requests The requests that will be sent to the server, in order
+	 * @return The responses given by the host, in the same order as the requests. A 
+	 * response is null if it couldn't be retrieved. The remaining requests are sent even if 
+	 * some of the requests fail.
+	 * @throws NoConnectionException If the server can't be reached
+	 */
+	public List<ResponseReplicate> sendAll(List<Request> requests) throws 
+			NoConnectionException
+	{
+		List<ResponseReplicate> responses = new ArrayList<>(requests.size());
+		boolean pipelining = true;
+		int next = 0;
+		while (next < requests.size())
+		{
+			// Finds the requests that can be pipelined together
+			int end = next;
+			while (pipelining && end < requests.size() && end - next < PIPELINE_WINDOW && 
+					requests.get(end).getMethod() != MethodType.POST)
+			{
+				end ++;
+			}
+			
+			if (end - next > 1)
+			{
+				int answered = sendPipelined(requests.subList(next, end), responses);
+				// If the server doesn't keep the connection open, falls back to sending the 
+				// requests one at a time
+				if (answered < end - next)
+					pipelining = false;
+				next += answered;
+			}
+			else
+			{
+				ResponseReplicate response;
+				try
+				{
+					response = sendRequest(requests.get(next));
+				}
+				catch (NoResponseException e)
+				{
+					response = null;
+				}
+				responses.add(response);
+				next ++;
+			}
+		}
+		
+		return responses;
+	}
+	
+	/**
+	 * Sends a request to the server without blocking. The request times out if no response 
+	 * has been received within 30 seconds.
+	 * @param request The request that will be sent to the server
+	 * @return A future that is completed with the response given by the host. If the server 
+	 * can't be reached, the future completes with a NoConnectionException and if the 
+	 * server doesn't respond in time, with a NoResponseException.
+	 * @see #sendRequestAsync(Request, long)
+	 */
+	public CompletableFuture<ResponseReplicate> sendRequestAsync(Request request)
+	{
+		return sendRequestAsync(request, DEFAULT_REQUEST_TIMEOUT_MILLIS);
+	}
+	
+	/**
+	 * Sends a request to the server without blocking. The amount of connections used for 
+	 * asynchronous requests is limited, the other requests waiting in a queue until a 
+	 * connection becomes available. Cancelling the returned future closes the connection 
+	 * used by the request. The future is completed in the common fork join pool, after the 
+	 * listeners have been informed about the received response.
+	 * @param request The request that will be sent to the server
+	 * @param timeoutMillis How long the request may take in total, including the time 
+	 * spent waiting for a connection. 0 or less means that the request never times out.
+	 * @return A future that is completed with the response given by the host. If the server 
+	 * can't be reached, the future completes with a NoConnectionException and if the 
+	 * server doesn't respond in time, with a NoResponseException.
+	 */
+	public CompletableFuture<ResponseReplicate> sendRequestAsync(Request request, 
+			long timeoutMillis)
+	{
+		HttpCoreContext coreContext = HttpCoreContext.create();
+		coreContext.setTargetHost(this.host);
+		HttpRequest httpRequest = request.toHttpRequest(this.encode);
+		ValidatorCache.Validation validation = prepareValidation(request, httpRequest);
+		
+		ClientEventLoop.Exchange exchange;
+		try
+		{
+			this.executor.preProcess(httpRequest, this.processor, coreContext);
+			exchange = new ClientEventLoop.Exchange(this.asyncRoute, request, 
+					serializeHead(httpRequest), timeoutMillis, getListenerHandler(), 
+					validation);
+			
+			ClientEventLoop loop = ClientEventLoop.getSharedLoop();
+			this.asyncLoop = loop;
+			
+			getListenerHandler().onHttpEvent(new HttpEvent(request, HttpEventType.SENT));
+			loop.submit(exchange);
+		}
+		catch (HttpException | IOException e)
+		{
+			CompletableFuture<ResponseReplicate> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new NoConnectionException(e));
+			return failed;
+		}
+		
+		return exchange.getFuture();
+	}
+	
 	/**
 	 * @return The HttpEventListenerHandler that will inform listeners about events from this 
 	 * client
@@ -172,33 +312,156 @@ public class Client
 		return this.listenerHandler;
 	}
 	
-	private void closeLatesConnection()
+	/**
+	 * @return The pool that holds the connections used by this client
+	 */
+	public ConnectionPool getConnectionPool()
+	{
+		return this.connectionPool;
+	}
+	
+	/**
+	 * @return The cache that holds the validated responses. Null if the responses are not 
+	 * cached.
+	 */
+	public ValidatorCache getValidatorCache()
+	{
+		return this.validatorCache;
+	}
+	
+	/**
+	 * Changes the cache used for revalidating GET requests. By default, no cache is used. 
+	 * With a cache, the client sends the tag (ETag) of the previously received response 
+	 * with each GET request and uses the cached response if the server answers that it 
+	 * hasn't changed (304). The cache may be shared between clients that connect to the 
+	 * same server.
+	 * @param cache The cache that should be used. Null if the responses shouldn't be cached.
+	 */
+	public void setValidatorCache(ValidatorCache cache)
+	{
+		this.validatorCache = cache;
+	}
+	
+	/**
+	 * Closes all currently open connections used by this requester. The connections that 
+	 * are being used by other threads are returned to the pool normally.
+	 */
+	public void closeAllConnections()
 	{
-		// Removes the closed connections from top
-		while (!this.openConnections.isEmpty() && !this.openConnections.peek().isOpen())
+		this.connectionPool.closeIdleConnections(this.host);
+		
+		ClientEventLoop loop = this.asyncLoop;
+		if (loop != null)
+			loop.closeIdleConnections(this.asyncRoute);
+	}
+	
+	private int sendPipelined(List<Request> requests, List<ResponseReplicate> responses) 
+			throws NoConnectionException
+	{
+		HttpCoreContext coreContext = HttpCoreContext.create();
+		coreContext.setTargetHost(this.host);
+		
+		int answered = 0;
+		ValidatorCache.Validation[] validations = new ValidatorCache.Validation[ 
+				requests.size()];
+		
+		PooledConnection connection = this.connectionPool.lease(this.host);
+		boolean reusable = false;
+		try
 		{
-			this.openConnections.pop();
+			// Writes all the requests before reading any of the responses
+			for (int i = 0; i < requests.size(); i++)
+			{
+				Request request = requests.get(i);
+				HttpRequest httpRequest = request.toHttpRequest(this.encode);
+				validations[i] = prepareValidation(request, httpRequest);
+				this.executor.preProcess(httpRequest, this.processor, coreContext);
+				connection.getConnection().sendRequestHeader(httpRequest);
+				getListenerHandler().onHttpEvent(new HttpEvent(request, HttpEventType.SENT));
+			}
+			connection.getConnection().flush();
+			
+			// The responses arrive in the same order
+			for (Request request : requests)
+			{
+				HttpResponse response;
+				do
+				{
+					response = connection.getConnection().receiveResponseHeader();
+				}
+				while (response.getStatusLine().getStatusCode() < HttpStatus.SC_OK);
+				
+				int status = response.getStatusLine().getStatusCode();
+				if (request.getMethod() != MethodType.HEAD && 
+						status != HttpStatus.SC_NO_CONTENT && 
+						status != HttpStatus.SC_NOT_MODIFIED)
+					connection.getConnection().receiveResponseEntity(response);
+				this.executor.postProcess(response, this.processor, coreContext);
+				
+				ResponseReplicate replicate = new ResponseReplicate(response);
+				if (validations[answered] != null)
+					replicate = validations[answered].complete(replicate);
+				EntityUtils.consume(response.getEntity());
+				responses.add(replicate);
+				answered ++;
+				getListenerHandler().onHttpEvent(new HttpEvent(replicate, request, 
+						HttpEventType.RECEIVED));
+				
+				// If the server closes the connection, the rest of the requests are lost
+				if (!DefaultConnectionReuseStrategy.INSTANCE.keepAlive(response, coreContext))
+					return answered;
+			}
+			
+			reusable = true;
 		}
-		try
+		catch (HttpException | IOException e)
 		{
-			if (!this.openConnections.isEmpty())
-				this.openConnections.pop().close();
+			// The requests that weren't answered are sent again. Only requests that can be 
+			// repeated are pipelined.
 		}
-		catch (IOException e)
+		finally
 		{
-			System.err.println("Failed to close the connection");
-			e.printStackTrace();
+			this.connectionPool.release(connection, reusable);
 		}
+		
+		return answered;
 	}
 	
-	/**
-	 * Closes all currently open connections used by this requester
-	 */
-	public void closeAllConnections()
+	private ValidatorCache.Validation prepareValidation(Request request, 
+			HttpRequest httpRequest)
+	{
+		ValidatorCache cache = this.validatorCache;
+		if (cache == null)
+			return null;
+		return cache.prepare(request, httpRequest);
+	}
+	
+	private static byte[] serializeHead(HttpRequest request)
+	{
+		StringBuilder head = new StringBuilder(256);
+		head.append(BasicLineFormatter.formatRequestLine(request.getRequestLine(), null));
+		head.append("\r\n");
+		for (Header header : request.getAllHeaders())
+		{
+			head.append(BasicLineFormatter.formatHeader(header, null));
+			head.append("\r\n");
+		}
+		head.append("\r\n");
+		
+		return head.toString().getBytes(HEADER_CHARSET);
+	}
+	
+	
+	// SUBCLASSES	----------------------------------
+	
+	private static class RequestAcceptEncoding implements HttpRequestInterceptor
 	{
-		while (!this.openConnections.isEmpty())
+		@Override
+		public void process(HttpRequest request, HttpContext context)
 		{
-			closeLatesConnection();
+			// The compressed responses are decompressed by the response decompressor
+			if (!request.containsHeader("Accept-Encoding"))
+				request.addHeader("Accept-Encoding", ResponseDecompressor.ACCEPTED_ENCODINGS);
 		}
 	}
 }
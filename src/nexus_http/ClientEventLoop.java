@@ -0,0 +1,927 @@
+package nexus_http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ParseException;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicLineParser;
+import org.apache.http.protocol.HTTP;
+
+import nexus_event.HttpEvent;
+import nexus_event.HttpEvent.HttpEventType;
+import nexus_event.HttpEventListenerHandler;
+
+/**
+ * ClientEventLoop sends the asynchronous requests of the clients. All the connections are 
+ * handled by a single selector thread which is shared by all the clients. The connections 
+ * are kept open between the requests and the amount of connections to each host is 
+ * limited, the requests that don't fit waiting in a queue. The futures are completed in 
+ * the common fork join pool so that slow callbacks don't stall the loop.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+class ClientEventLoop extends Thread
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_HEADER_LENGTH = 64 * 1024;
+	private static final int MAX_RESPONSE_LENGTH = 64 * 1024 * 1024;
+	private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+	private static final long MAX_SELECT_MILLIS = 1000;
+	
+	private static volatile ClientEventLoop sharedLoop = null;
+	
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+	private final ByteBuffer readBuffer;
+	private final Set<Route> routes;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	private ClientEventLoop() throws IOException
+	{
+		super("Nexus client event loop");
+		setDaemon(true);
+		
+		this.selector = Selector.open();
+		this.tasks = new ConcurrentLinkedQueue<>();
+		this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		this.routes = new HashSet<>();
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void run()
+	{
+		long selectMillis = MAX_SELECT_MILLIS;
+		while (true)
+		{
+			try
+			{
+				this.selector.select(selectMillis);
+				runTasks();
+				
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					
+					if (!key.isValid())
+						continue;
+					Connection connection = (Connection) key.attachment();
+					if (key.isConnectable())
+						connection.onConnectable();
+					else
+					{
+						if (key.isWritable())
+							connection.onWritable();
+						if (key.isValid() && key.isReadable())
+							connection.onReadable();
+					}
+				}
+				
+				selectMillis = checkTimeouts();
+			}
+			catch (IOException | RuntimeException e)
+			{
+				System.err.println("Error in the client event loop");
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * @return The loop shared by all the clients. The loop is started when it is first 
+	 * requested.
+	 * @throws IOException If the loop couldn't be started
+	 */
+	public static synchronized ClientEventLoop getSharedLoop() throws IOException
+	{
+		if (sharedLoop == null)
+		{
+			sharedLoop = new ClientEventLoop();
+			sharedLoop.start();
+		}
+		
+		return sharedLoop;
+	}
+	
+	/**
+	 * Sends a request once a connection to the host becomes available
+	 * @param exchange The request that is sent
+	 */
+	public void submit(final Exchange exchange)
+	{
+		execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				ClientEventLoop.this.routes.add(exchange.route);
+				exchange.route.pending.add(exchange);
+				dispatch(exchange.route);
+			}
+		});
+	}
+	
+	/**
+	 * Closes the connections to the route's host that aren't currently used
+	 * @param route The route whose connections are closed
+	 */
+	public void closeIdleConnections(final Route route)
+	{
+		execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (Connection connection : new ArrayList<>(route.idle))
+				{
+					connection.close(null);
+				}
+			}
+		});
+	}
+	
+	private void execute(Runnable task)
+	{
+		// Tasks from other threads are run in the loop thread on the next round
+		this.tasks.offer(task);
+		this.selector.wakeup();
+	}
+	
+	private void runTasks()
+	{
+		Runnable task;
+		while ((task = this.tasks.poll()) != null)
+		{
+			task.run();
+		}
+	}
+	
+	private void dispatch(Route route)
+	{
+		while (!route.pending.isEmpty())
+		{
+			Exchange exchange = route.pending.peek();
+			if (exchange.future.isDone())
+			{
+				route.pending.poll();
+				continue;
+			}
+			
+			// Uses the most recently used idle connection or opens a new one
+			Connection connection = route.idle.pollFirst();
+			if (connection == null)
+			{
+				if (route.open >= route.maxConnections)
+					return;
+				connection = open(route);
+				if (connection == null)
+					continue;
+			}
+			
+			route.pending.poll();
+			connection.send(exchange);
+		}
+	}
+	
+	private Connection open(Route route)
+	{
+		Exchange exchange = route.pending.peek();
+		SocketChannel channel = null;
+		try
+		{
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			
+			Connection connection = new Connection(this, route, channel);
+			if (channel.connect(new InetSocketAddress(route.host.getHostName(), 
+					route.host.getPort())))
+				connection.key = channel.register(this.selector, 0, connection);
+			else
+			{
+				connection.key = channel.register(this.selector, SelectionKey.OP_CONNECT, 
+						connection);
+				connection.connecting = true;
+			}
+			route.open ++;
+			
+			return connection;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (IOException ignore)
+				{
+					// Ignores the exception
+				}
+			}
+			
+			route.pending.poll();
+			exchange.fail(new NoConnectionException(e));
+			return null;
+		}
+	}
+	
+	private long checkTimeouts()
+	{
+		long now = System.nanoTime();
+		long nextDeadline = now + TimeUnit.MILLISECONDS.toNanos(MAX_SELECT_MILLIS);
+		
+		// Requests that are being sent or waiting for their response. The keys are copied 
+		// since closing a connection may open another one.
+		for (SelectionKey key : new ArrayList<>(this.selector.keys()))
+		{
+			Connection connection = (Connection) key.attachment();
+			Exchange exchange = connection.exchange;
+			if (exchange == null)
+			{
+				if (now - connection.lastUsedNanos > IDLE_TIMEOUT_NANOS)
+					connection.close(null);
+			}
+			// Cancelled requests can't finish so their connections are closed
+			else if (exchange.future.isDone())
+				connection.close(null);
+			else if (exchange.deadlineNanos != 0)
+			{
+				if (now - exchange.deadlineNanos >= 0)
+					connection.close(new NoResponseException("The request " + 
+							exchange.request + " timed out"));
+				else if (exchange.deadlineNanos - nextDeadline < 0)
+					nextDeadline = exchange.deadlineNanos;
+			}
+		}
+		
+		// Requests that are still waiting for a connection
+		List<Route> emptyRoutes = new ArrayList<>();
+		for (Route route : this.routes)
+		{
+			Iterator<Exchange> pending = route.pending.iterator();
+			while (pending.hasNext())
+			{
+				Exchange exchange = pending.next();
+				if (exchange.future.isDone())
+					pending.remove();
+				else if (exchange.deadlineNanos != 0)
+				{
+					if (now - exchange.deadlineNanos >= 0)
+					{
+						pending.remove();
+						exchange.fail(new NoConnectionException("No connection to " + 
+								route.host + " became available in time"));
+					}
+					else if (exchange.deadlineNanos - nextDeadline < 0)
+						nextDeadline = exchange.deadlineNanos;
+				}
+			}
+			
+			dispatch(route);
+			if (route.open == 0 && route.pending.isEmpty())
+				emptyRoutes.add(route);
+		}
+		this.routes.removeAll(emptyRoutes);
+		
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextDeadline - now) + 1);
+	}
+	
+	private static int indexOfHeaderEnd(byte[] data, int from, int length)
+	{
+		for (int i = Math.max(0, from); i + 3 < length; i++)
+		{
+			if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && 
+					data[i + 3] == '\n')
+				return i;
+		}
+		return -1;
+	}
+	
+	private static int indexOfLineEnd(byte[] data, int from, int length)
+	{
+		for (int i = from; i + 1 < length; i++)
+		{
+			if (data[i] == '\r' && data[i + 1] == '\n')
+				return i;
+		}
+		return -1;
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	/**
+	 * Route holds the connections and the waiting requests of a single client. The route 
+	 * is only accessed from the loop thread.
+	 * @author Mikko Hilpinen
+	 * @since 17.10.2026
+	 */
+	public static class Route
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final HttpHost host;
+		private final int maxConnections;
+		private final Deque<Exchange> pending;
+		private final Deque<Connection> idle;
+		private int open;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		/**
+		 * Creates a new route
+		 * @param host The host the requests are sent to
+		 * @param maxConnections How many connections may be open to the host at once
+		 */
+		public Route(HttpHost host, int maxConnections)
+		{
+			this.host = host;
+			this.maxConnections = maxConnections;
+			this.pending = new ArrayDeque<>();
+			this.idle = new ArrayDeque<>();
+			this.open = 0;
+		}
+	}
+	
+	/**
+	 * Exchange is a single request waiting for its response
+	 * @author Mikko Hilpinen
+	 * @since 17.10.2026
+	 */
+	public static class Exchange
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final Route route;
+		private final Request request;
+		private final byte[] head;
+		private final boolean expectsBody;
+		private final long deadlineNanos;
+		private final HttpEventListenerHandler listenerHandler;
+		private final ValidatorCache.Validation validation;
+		private final ResponseFuture future;
+		private boolean retried;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		/**
+		 * Creates a new exchange
+		 * @param route The route the request is sent through
+		 * @param request The request that is sent
+		 * @param head The serialized request line and headers
+		 * @param timeoutMillis How long the response may take, including the time spent 
+		 * waiting for a connection. 0 or less means no timeout.
+		 * @param listenerHandler The handler that is informed when the response is received
+		 * @param validation The validation completed with the response. Null if the 
+		 * response isn't validated.
+		 */
+		public Exchange(Route route, Request request, byte[] head, long timeoutMillis, 
+				HttpEventListenerHandler listenerHandler, 
+				ValidatorCache.Validation validation)
+		{
+			this.route = route;
+			this.request = request;
+			this.head = head;
+			this.expectsBody = request.getMethod() != MethodType.HEAD;
+			this.listenerHandler = listenerHandler;
+			this.validation = validation;
+			this.future = new ResponseFuture();
+			this.retried = false;
+			
+			if (timeoutMillis > 0)
+			{
+				// 0 is reserved for no deadline
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( 
+						timeoutMillis);
+				this.deadlineNanos = deadline == 0 ? 1 : deadline;
+			}
+			else
+				this.deadlineNanos = 0;
+		}
+		
+		
+		// GETTERS & SETTERS	--------------------
+		
+		/**
+		 * @return The future that is completed once the response has been received
+		 */
+		public CompletableFuture<ResponseReplicate> getFuture()
+		{
+			return this.future;
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		private void succeed(final HttpResponse response)
+		{
+			ForkJoinPool.commonPool().execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// The loop doesn't use the client's processor so the body is 
+					// decompressed here
+					ResponseDecompressor.decompress(response);
+					ResponseReplicate replicate = new ResponseReplicate(response);
+					if (Exchange.this.validation != null)
+						replicate = Exchange.this.validation.complete(replicate);
+					Exchange.this.listenerHandler.onHttpEvent(new HttpEvent(replicate, 
+							Exchange.this.request, HttpEventType.RECEIVED));
+					Exchange.this.future.complete(replicate);
+				}
+			});
+		}
+		
+		private void fail(final Exception cause)
+		{
+			ForkJoinPool.commonPool().execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Exchange.this.future.completeExceptionally(cause);
+				}
+			});
+		}
+	}
+	
+	private static class ResponseFuture extends CompletableFuture<ResponseReplicate>
+	{
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			// The loop notices the cancellation and closes the connection on its next round
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled && sharedLoop != null)
+				sharedLoop.selector.wakeup();
+			return cancelled;
+		}
+	}
+	
+	private static class Connection
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final ClientEventLoop loop;
+		private final Route route;
+		private final SocketChannel channel;
+		private SelectionKey key;
+		private Exchange exchange;
+		private ByteBuffer output;
+		private boolean connecting, reused, closed;
+		private long lastUsedNanos;
+		
+		private byte[] input;
+		private int inputLength, headerScanIndex, bodyStart, contentLength, chunkIndex;
+		private HttpResponse response;
+		private BodyType bodyType;
+		private ByteArrayOutputStream chunkedBody;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public Connection(ClientEventLoop loop, Route route, SocketChannel channel)
+		{
+			this.loop = loop;
+			this.route = route;
+			this.channel = channel;
+			this.key = null;
+			this.exchange = null;
+			this.output = null;
+			this.connecting = false;
+			this.reused = false;
+			this.closed = false;
+			this.lastUsedNanos = System.nanoTime();
+			resetInput();
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		public void send(Exchange exchange)
+		{
+			this.exchange = exchange;
+			this.output = ByteBuffer.wrap(exchange.head);
+			this.response = null;
+			
+			// Writing starts once the connection has been established
+			if (!this.connecting)
+			{
+				this.key.interestOps(SelectionKey.OP_WRITE);
+				onWritable();
+			}
+		}
+		
+		public void onConnectable()
+		{
+			try
+			{
+				this.channel.finishConnect();
+			}
+			catch (IOException e)
+			{
+				close(new NoConnectionException(e));
+				return;
+			}
+			
+			this.connecting = false;
+			this.key.interestOps(SelectionKey.OP_WRITE);
+			onWritable();
+		}
+		
+		public void onWritable()
+		{
+			try
+			{
+				this.channel.write(this.output);
+			}
+			catch (IOException e)
+			{
+				closeOrRetry(e);
+				return;
+			}
+			
+			// Once the request has been written, waits for the response
+			if (!this.output.hasRemaining())
+			{
+				this.output = null;
+				this.key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+		
+		public void onReadable()
+		{
+			// The loop's buffer is used for reading so that idle connections don't
+			// reserve any memory
+			ByteBuffer buffer = this.loop.readBuffer;
+			int read;
+			try
+			{
+				buffer.clear();
+				read = this.channel.read(buffer);
+			}
+			catch (IOException e)
+			{
+				closeOrRetry(e);
+				return;
+			}
+			
+			if (read < 0)
+			{
+				// Some responses end when the server closes the connection
+				if (this.response != null && this.bodyType == BodyType.UNTIL_CLOSE)
+					finish(copyInput(this.bodyStart, this.inputLength - this.bodyStart), 
+							false);
+				else
+					closeOrRetry(new NoResponseException("The server closed the connection"));
+				return;
+			}
+			if (read == 0 || this.exchange == null)
+			{
+				// Idle connections shouldn't receive anything
+				if (this.exchange == null)
+					close(null);
+				return;
+			}
+			
+			buffer.flip();
+			appendInput(buffer);
+			try
+			{
+				processInput();
+			}
+			catch (ParseException | NumberFormatException e)
+			{
+				close(new NoResponseException("Couldn't parse the response: " + 
+						e.getMessage()));
+			}
+		}
+		
+		public void close(Exception cause)
+		{
+			if (this.closed)
+				return;
+			this.closed = true;
+			
+			this.route.open --;
+			this.route.idle.remove(this);
+			if (this.key != null)
+				this.key.cancel();
+			try
+			{
+				this.channel.close();
+			}
+			catch (IOException ignore)
+			{
+				// Ignores the exception
+			}
+			
+			if (this.exchange != null && !this.exchange.future.isDone())
+			{
+				if (cause == null)
+					cause = new NoResponseException("The connection was closed");
+				this.exchange.fail(cause);
+			}
+			this.exchange = null;
+			this.input = null;
+			
+			// Another request may now take the freed place
+			this.loop.dispatch(this.route);
+		}
+		
+		private void closeOrRetry(Exception cause)
+		{
+			// The server may have closed a reused connection before it received the request, 
+			// in which case the request is sent again through another connection. POST 
+			// requests are never sent twice, since the server may have handled them already. 
+			// They fail with the cause instead.
+			Exchange exchange = this.exchange;
+			if (this.reused && this.inputLength == 0 && exchange != null && 
+					!exchange.retried && exchange.request.getMethod() != MethodType.POST)
+			{
+				exchange.retried = true;
+				this.exchange = null;
+				this.route.pending.addFirst(exchange);
+			}
+			
+			close(cause);
+		}
+		
+		private void processInput()
+		{
+			if (this.response == null)
+			{
+				int headerEnd = indexOfHeaderEnd(this.input, this.headerScanIndex, 
+						this.inputLength);
+				if (headerEnd < 0)
+				{
+					if (this.inputLength > MAX_HEADER_LENGTH)
+						close(new NoResponseException("The response header is too long"));
+					else
+						this.headerScanIndex = Math.max(0, this.inputLength - 3);
+					return;
+				}
+				
+				parseHead(headerEnd);
+				if (this.response == null)
+				{
+					// Informational responses are skipped
+					consumeInput(headerEnd + 4);
+					processInput();
+					return;
+				}
+			}
+			
+			switch (this.bodyType)
+			{
+				case NONE:
+					finish(null, true);
+					break;
+				case LENGTH:
+					if (this.inputLength - this.bodyStart >= this.contentLength)
+						finish(copyInput(this.bodyStart, this.contentLength), true);
+					break;
+				case CHUNKED:
+					if (readChunks())
+						finish(this.chunkedBody.toByteArray(), true);
+					break;
+				case UNTIL_CLOSE:
+					if (this.inputLength - this.bodyStart > MAX_RESPONSE_LENGTH)
+						close(new NoResponseException("The response is too long"));
+					break;
+			}
+		}
+		
+		private void parseHead(int headerEnd)
+		{
+			String[] lines = new String(this.input, 0, headerEnd, HEADER_CHARSET).split( 
+					"\r\n");
+			StatusLine statusLine = BasicLineParser.parseStatusLine(lines[0], null);
+			int status = statusLine.getStatusCode();
+			if (status < HttpStatus.SC_OK)
+				return;
+			
+			HttpResponse response = new BasicHttpResponse(statusLine);
+			this.bodyType = BodyType.UNTIL_CLOSE;
+			for (int i = 1; i < lines.length; i++)
+			{
+				Header header = BasicLineParser.parseHeader(lines[i], null);
+				response.addHeader(header);
+				
+				if (header.getName().equalsIgnoreCase(HTTP.TRANSFER_ENCODING) && 
+						header.getValue().trim().equalsIgnoreCase(HTTP.CHUNK_CODING))
+					this.bodyType = BodyType.CHUNKED;
+				else if (header.getName().equalsIgnoreCase(HTTP.CONTENT_LEN) && 
+						this.bodyType != BodyType.CHUNKED)
+				{
+					this.contentLength = Integer.parseInt(header.getValue().trim());
+					if (this.contentLength < 0 || this.contentLength > MAX_RESPONSE_LENGTH)
+						throw new NumberFormatException("Invalid content length " + 
+								this.contentLength);
+					this.bodyType = BodyType.LENGTH;
+				}
+			}
+			
+			// HEAD requests and some statuses never have a body
+			if (!this.exchange.expectsBody || status == HttpStatus.SC_NO_CONTENT || 
+					status == HttpStatus.SC_NOT_MODIFIED)
+				this.bodyType = BodyType.NONE;
+			
+			this.response = response;
+			this.bodyStart = headerEnd + 4;
+			this.chunkIndex = this.bodyStart;
+			if (this.bodyType == BodyType.CHUNKED)
+				this.chunkedBody = new ByteArrayOutputStream();
+		}
+		
+		private boolean readChunks()
+		{
+			// Reads as many complete chunks as possible. The last chunk is empty.
+			while (true)
+			{
+				int sizeEnd = indexOfLineEnd(this.input, this.chunkIndex, this.inputLength);
+				if (sizeEnd < 0)
+					return false;
+				
+				String sizeLine = new String(this.input, this.chunkIndex, 
+						sizeEnd - this.chunkIndex, HEADER_CHARSET);
+				int extensionStart = sizeLine.indexOf(';');
+				if (extensionStart >= 0)
+					sizeLine = sizeLine.substring(0, extensionStart);
+				int size = Integer.parseInt(sizeLine.trim(), 16);
+				if (size < 0 || this.chunkedBody.size() + size > MAX_RESPONSE_LENGTH)
+					throw new NumberFormatException("Invalid chunk size " + size);
+				
+				if (size == 0)
+				{
+					// The trailers end with an empty line
+					int trailerEnd = indexOfHeaderEnd(this.input, sizeEnd, this.inputLength);
+					if (trailerEnd < 0)
+						return false;
+					this.bodyStart = trailerEnd + 4;
+					return true;
+				}
+				
+				int dataStart = sizeEnd + 2;
+				if (this.inputLength < dataStart + size + 2)
+					return false;
+				this.chunkedBody.write(this.input, dataStart, size);
+				this.chunkIndex = dataStart + size + 2;
+			}
+		}
+		
+		private void finish(byte[] body, boolean canReuse)
+		{
+			HttpResponse response = this.response;
+			if (body != null)
+			{
+				ByteArrayEntity entity = new ByteArrayEntity(body);
+				entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+				entity.setContentEncoding(response.getFirstHeader(HTTP.CONTENT_ENCODING));
+				response.setEntity(entity);
+			}
+			
+			Exchange exchange = this.exchange;
+			int responseLength = this.bodyStart;
+			if (this.bodyType == BodyType.LENGTH)
+				responseLength += this.contentLength;
+			boolean reusable = canReuse && keepAlive(response) && 
+					responseLength == this.inputLength;
+			
+			this.exchange = null;
+			resetInput();
+			if (!exchange.future.isDone())
+				exchange.succeed(response);
+			
+			if (reusable && !this.closed)
+			{
+				this.reused = true;
+				this.lastUsedNanos = System.nanoTime();
+				this.route.idle.addFirst(this);
+				this.loop.dispatch(this.route);
+			}
+			else
+				close(null);
+		}
+		
+		private static boolean keepAlive(HttpResponse response)
+		{
+			Header connectionHeader = response.getFirstHeader(HTTP.CONN_DIRECTIVE);
+			if (connectionHeader != null)
+			{
+				for (HeaderElement element : connectionHeader.getElements())
+				{
+					if (HTTP.CONN_CLOSE.equalsIgnoreCase(element.getName()))
+						return false;
+					if (HTTP.CONN_KEEP_ALIVE.equalsIgnoreCase(element.getName()))
+						return true;
+				}
+			}
+			
+			// HTTP/1.0 connections are only kept alive on request
+			ProtocolVersion version = response.getStatusLine().getProtocolVersion();
+			return !version.lessEquals(HttpVersion.HTTP_1_0);
+		}
+		
+		private void appendInput(ByteBuffer buffer)
+		{
+			int required = this.inputLength + buffer.remaining();
+			if (this.input == null)
+				this.input = new byte[Math.max(required, 1024)];
+			else if (required > this.input.length)
+			{
+				byte[] larger = new byte[Math.max(required, this.input.length * 2)];
+				System.arraycopy(this.input, 0, larger, 0, this.inputLength);
+				this.input = larger;
+			}
+			
+			int amount = buffer.remaining();
+			buffer.get(this.input, this.inputLength, amount);
+			this.inputLength += amount;
+		}
+		
+		private void consumeInput(int amount)
+		{
+			System.arraycopy(this.input, amount, this.input, 0, this.inputLength - amount);
+			this.inputLength -= amount;
+			this.headerScanIndex = 0;
+		}
+		
+		private byte[] copyInput(int from, int length)
+		{
+			byte[] copy = new byte[length];
+			System.arraycopy(this.input, from, copy, 0, length);
+			return copy;
+		}
+		
+		private void resetInput()
+		{
+			this.input = null;
+			this.inputLength = 0;
+			this.headerScanIndex = 0;
+			this.bodyStart = 0;
+			this.contentLength = 0;
+			this.chunkIndex = 0;
+			this.response = null;
+			this.bodyType = null;
+			this.chunkedBody = null;
+		}
+	}
+	
+	
+	// ENUMERATIONS	--------------------------------
+	
+	private static enum BodyType
+	{
+		NONE, 
+		LENGTH, 
+		CHUNKED, 
+		UNTIL_CLOSE;
+	}
+}
@@ -0,0 +1,493 @@
+package nexus_http;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.HttpHost;
+import org.apache.http.impl.DefaultBHttpClientConnection;
+
+/**
+ * ConnectionPool keeps the client connections open between requests so that they can be 
+ * reused. The amount of connections is limited both in total and for each route (host). 
+ * When all the connections are in use, the threads requesting a connection wait until one 
+ * becomes available or the lease timeout is reached. Connections that have been idle for 
+ * too long are closed and connections that have been idle for a while are checked before 
+ * they are reused, since the server may have closed them in the meantime. The pool can be 
+ * shared by multiple threads and clients.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class ConnectionPool
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private static final int BUFFER_SIZE = 8 * 1024;
+	
+	private final int maxTotal, maxPerRoute;
+	private final long idleTimeoutNanos, leaseTimeoutNanos;
+	private volatile long staleCheckNanos;
+	private ReentrantLock lock;
+	private Condition released;
+	private Map<HttpHost, Route> routes;
+	private int totalAmount;
+	private boolean shutdown;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new pool
+	 * @param maxTotal How many connections may be open at once
+	 * @param maxPerRoute How many connections may be open to a single host at once
+	 * @param idleTimeoutMillis How long a connection may stay unused before it is closed
+	 * @param leaseTimeoutMillis How long a thread may wait for a free connection before 
+	 * giving up
+	 */
+	public ConnectionPool(int maxTotal, int maxPerRoute, long idleTimeoutMillis, 
+			long leaseTimeoutMillis)
+	{
+		if (maxTotal <= 0 || maxPerRoute <= 0)
+			throw new IllegalArgumentException("The connection limits must be positive");
+		
+		this.maxTotal = maxTotal;
+		this.maxPerRoute = maxPerRoute;
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+		this.leaseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis);
+		this.staleCheckNanos = TimeUnit.SECONDS.toNanos(2);
+		this.lock = new ReentrantLock();
+		this.released = this.lock.newCondition();
+		this.routes = new HashMap<>();
+		this.totalAmount = 0;
+		this.shutdown = false;
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * Changes how long a connection must have been idle before it is checked for staleness 
+	 * when it is leased. The check takes a moment so it isn't done for connections that were 
+	 * used just recently. The default is 2 seconds.
+	 * @param staleCheckMillis How long a connection may be idle before it is checked
+	 */
+	public void setStaleCheckMillis(long staleCheckMillis)
+	{
+		this.staleCheckNanos = TimeUnit.MILLISECONDS.toNanos(staleCheckMillis);
+	}
+	
+	/**
+	 * @return How many connections are currently open, including the ones in use
+	 */
+	public int getOpenConnectionAmount()
+	{
+		this.lock.lock();
+		try
+		{
+			return this.totalAmount;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return How many connections are currently in use
+	 */
+	public int getLeasedConnectionAmount()
+	{
+		this.lock.lock();
+		try
+		{
+			int leased = 0;
+			for (Route route : this.routes.values())
+			{
+				leased += route.leased;
+			}
+			return leased;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Takes a connection to the given host into use. An idle connection is reused if there 
+	 * is one, otherwise a new connection is opened. If the connection limits have been 
+	 * reached, waits until a connection is released. The connection must be returned with 
+	 * {@link #release(PooledConnection, boolean)} once it is no longer used.
+	 * @param host The host the connection is made to
+	 * @return An open connection to the host
+	 * @throws NoConnectionException If the connection couldn't be opened, no connection 
+	 * became available in time or the pool has been shut down
+	 */
+	public PooledConnection lease(HttpHost host) throws NoConnectionException
+	{
+		long deadline = System.nanoTime() + this.leaseTimeoutNanos;
+		
+		while (true)
+		{
+			PooledConnection connection = null;
+			boolean reserved = false;
+			
+			this.lock.lock();
+			try
+			{
+				while (connection == null && !reserved)
+				{
+					if (this.shutdown)
+						throw new NoConnectionException( 
+								"The connection pool has been shut down");
+					
+					Route route = getRoute(host);
+					closeExpired(route, System.nanoTime());
+					
+					// Reuses the most recently used connection, if possible
+					connection = route.idle.pollFirst();
+					if (connection != null)
+						route.leased ++;
+					// Or opens a new one, if the limits allow it
+					else if (route.getSize() < this.maxPerRoute && (this.totalAmount < 
+							this.maxTotal || closeIdleFromOtherRoute(route)))
+					{
+						route.leased ++;
+						this.totalAmount ++;
+						reserved = true;
+					}
+					// Otherwise waits for a connection to be released
+					else
+					{
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0)
+							throw new NoConnectionException("No connection to " + host + 
+									" became available in time");
+						try
+						{
+							this.released.awaitNanos(remaining);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw new NoConnectionException(e);
+						}
+					}
+				}
+			}
+			finally
+			{
+				this.lock.unlock();
+			}
+			
+			// The connections are opened and checked outside the lock
+			if (reserved)
+				return open(host);
+			if (System.nanoTime() - connection.lastUsedNanos < this.staleCheckNanos || 
+					!connection.getConnection().isStale())
+				return connection;
+			
+			// Stale connections are discarded and the search continues
+			release(connection, false);
+		}
+	}
+	
+	/**
+	 * Returns a connection to the pool
+	 * @param connection The connection that was leased from this pool
+	 * @param reusable Can the connection be used for another request. This is false if the 
+	 * request failed or the server wants to close the connection.
+	 */
+	public void release(PooledConnection connection, boolean reusable)
+	{
+		boolean close = false;
+		
+		this.lock.lock();
+		try
+		{
+			Route route = getRoute(connection.host);
+			route.leased --;
+			
+			if (reusable && !this.shutdown && connection.getConnection().isOpen())
+			{
+				connection.lastUsedNanos = System.nanoTime();
+				route.idle.addFirst(connection);
+			}
+			else
+			{
+				this.totalAmount --;
+				close = true;
+			}
+			
+			this.released.signalAll();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		if (close)
+			close(connection);
+	}
+	
+	/**
+	 * Closes the connections that have been idle for longer than the idle timeout. This is 
+	 * also done automatically whenever connections are leased.
+	 */
+	public void closeExpiredConnections()
+	{
+		this.lock.lock();
+		try
+		{
+			long now = System.nanoTime();
+			for (Route route : this.routes.values())
+			{
+				closeExpired(route, now);
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Closes all the idle connections to the given host. The connections that are 
+	 * currently in use are returned to the pool normally.
+	 * @param host The host whose connections are closed
+	 */
+	public void closeIdleConnections(HttpHost host)
+	{
+		List<PooledConnection> closed = new ArrayList<>();
+		
+		this.lock.lock();
+		try
+		{
+			Route route = this.routes.get(host);
+			if (route != null)
+				closed.addAll(removeIdle(route));
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		for (PooledConnection connection : closed)
+		{
+			close(connection);
+		}
+	}
+	
+	/**
+	 * Closes all the idle connections and stops the pool from lending new ones. The 
+	 * connections that are currently in use are closed once they are released.
+	 */
+	public void shutdown()
+	{
+		List<PooledConnection> closed = new ArrayList<>();
+		
+		this.lock.lock();
+		try
+		{
+			this.shutdown = true;
+			for (Route route : this.routes.values())
+			{
+				closed.addAll(removeIdle(route));
+			}
+			this.released.signalAll();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		for (PooledConnection connection : closed)
+		{
+			close(connection);
+		}
+	}
+	
+	private PooledConnection open(HttpHost host) throws NoConnectionException
+	{
+		DefaultBHttpClientConnection connection = new DefaultBHttpClientConnection(BUFFER_SIZE);
+		try
+		{
+			// The requests are written in one go so there's nothing to gain from delaying them
+			Socket socket = new Socket(host.getHostName(), host.getPort());
+			socket.setTcpNoDelay(true);
+			connection.bind(socket);
+		}
+		catch (IOException e)
+		{
+			// Frees the reserved place
+			this.lock.lock();
+			try
+			{
+				getRoute(host).leased --;
+				this.totalAmount --;
+				this.released.signalAll();
+			}
+			finally
+			{
+				this.lock.unlock();
+			}
+			
+			throw new NoConnectionException(e);
+		}
+		
+		return new PooledConnection(host, connection);
+	}
+	
+	private Route getRoute(HttpHost host)
+	{
+		Route route = this.routes.get(host);
+		if (route == null)
+		{
+			route = new Route();
+			this.routes.put(host, route);
+		}
+		
+		return route;
+	}
+	
+	private void closeExpired(Route route, long now)
+	{
+		// The least recently used connections are at the end of the queue
+		while (!route.idle.isEmpty() && 
+				now - route.idle.peekLast().lastUsedNanos > this.idleTimeoutNanos)
+		{
+			this.totalAmount --;
+			close(route.idle.pollLast());
+		}
+	}
+	
+	private boolean closeIdleFromOtherRoute(Route requestingRoute)
+	{
+		// Makes room by closing the least recently used idle connection of another route
+		PooledConnection oldest = null;
+		Route oldestRoute = null;
+		for (Route route : this.routes.values())
+		{
+			if (route == requestingRoute || route.idle.isEmpty())
+				continue;
+			
+			PooledConnection candidate = route.idle.peekLast();
+			if (oldest == null || candidate.lastUsedNanos < oldest.lastUsedNanos)
+			{
+				oldest = candidate;
+				oldestRoute = route;
+			}
+		}
+		
+		if (oldest == null)
+			return false;
+		
+		oldestRoute.idle.pollLast();
+		this.totalAmount --;
+		close(oldest);
+		return true;
+	}
+	
+	private List<PooledConnection> removeIdle(Route route)
+	{
+		List<PooledConnection> removed = new ArrayList<>(route.idle);
+		this.totalAmount -= removed.size();
+		route.idle.clear();
+		
+		return removed;
+	}
+	
+	private static void close(PooledConnection connection)
+	{
+		try
+		{
+			connection.getConnection().close();
+		}
+		catch (IOException e)
+		{
+			// The connection is discarded in any case
+			try
+			{
+				connection.getConnection().shutdown();
+			}
+			catch (IOException ignore)
+			{
+				// Ignores the exception
+			}
+		}
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	/**
+	 * PooledConnection is a connection leased from a connection pool
+	 * @author Mikko Hilpinen
+	 * @since 17.10.2026
+	 */
+	public static class PooledConnection
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final HttpHost host;
+		private final DefaultBHttpClientConnection connection;
+		private long lastUsedNanos;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		private PooledConnection(HttpHost host, DefaultBHttpClientConnection connection)
+		{
+			this.host = host;
+			this.connection = connection;
+			this.lastUsedNanos = System.nanoTime();
+		}
+		
+		
+		// GETTERS & SETTERS	--------------------
+		
+		/**
+		 * @return The connection that is used for sending the requests
+		 */
+		public DefaultBHttpClientConnection getConnection()
+		{
+			return this.connection;
+		}
+		
+		/**
+		 * @return The host the connection leads to
+		 */
+		public HttpHost getHost()
+		{
+			return this.host;
+		}
+	}
+	
+	private static class Route
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final Deque<PooledConnection> idle = new ArrayDeque<>();
+		private int leased = 0;
+		
+		
+		// OTHER METHODS	------------------------
+		
+		public int getSize()
+		{
+			return this.leased + this.idle.size();
+		}
+	}
+}
@@ -4,7 +4,9 @@ import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLStreamException;
@@ -34,7 +36,8 @@ import flow_recording.ObjectFormatException;
  * #varName:contentName=<br>
  * if you want to parse an attribute, the contentName should start with '@', otherwise the 
  * parsed value will be text data in a single element with the given name. You can use 
- * the parsed variables in the subsequent requests (remember to include the '#')
+ * the parsed variables in the subsequent requests (remember to include the '#'). The 
+ * requests that don't parse variables are collected and sent in pipelined batches.
  * @author Mikko Hilpinen
  * @since 22.2.2015
  */
@@ -46,6 +49,9 @@ public class FileReaderClient extends AbstractFileReader
 	private Client client;
 	private boolean failed;
 	private ContentType serverContentType;
+	private List<Request> queuedRequests;
+	
+	private static final int BATCH_SIZE = 64;
 	
 	
 	// CONSTRUCTOR	-------------------------------------
@@ -65,6 +71,7 @@ public class FileReaderClient extends AbstractFileReader
 		this.client = new Client(userAgent, hostAddress, hostPort, encodeRequests);
 		this.failed = false;
 		this.serverContentType = serverContentType;
+		this.queuedRequests = new ArrayList<>();
 	}
 	
 	
@@ -89,6 +96,9 @@ public class FileReaderClient extends AbstractFileReader
 			// response
 			if (line.startsWith("#"))
 			{
+				// The previous requests must be completed before the variable is parsed
+				sendQueuedRequests();
+				
 				int varEndsAt = line.indexOf('=');
 				
 				if (varEndsAt < 0)
@@ -120,10 +130,16 @@ public class FileReaderClient extends AbstractFileReader
 				
 				if (response.getStatusCode() == HttpStatus.SC_OK)
 				{
+					// The request may ask for another content type than the server's default
+					ContentType contentType = ContentType.parseFromString(
+							request.getParameterValue("contentType"));
+					if (contentType == null)
+						contentType = this.serverContentType;
+					
 					try
 					{
 						String parsedValue = parseVariableFromResponse(response, 
-								searchName, searchAttribute, this.serverContentType);
+								searchName, searchAttribute, contentType);
 						
 						if (parsedValue == null)
 							System.err.println("Couldn't find " + searchName + 
@@ -144,7 +160,11 @@ public class FileReaderClient extends AbstractFileReader
 				}
 			}
 			else
-				this.client.sendRequest(Request.parseFromString(line));
+			{
+				this.queuedRequests.add(Request.parseFromString(line));
+				if (this.queuedRequests.size() >= BATCH_SIZE)
+					sendQueuedRequests();
+			}
 		}
 		catch (NoConnectionException e)
 		{
@@ -167,6 +187,18 @@ public class FileReaderClient extends AbstractFileReader
 	{
 		super.readFile(fileName, commentIndicator);
 		
+		// Sends the remaining requests
+		try
+		{
+			if (!this.failed)
+				sendQueuedRequests();
+		}
+		catch (NoConnectionException e)
+		{
+			System.err.println("No connection to the server");
+		}
+		this.queuedRequests.clear();
+		
 		// Closes the connections afterwards
 		this.parsedVariables = new HashMap<>();
 		this.failed = false;
@@ -184,6 +216,23 @@ public class FileReaderClient extends AbstractFileReader
 		return this.client.getListenerHandler();
 	}
 	
+	private void sendQueuedRequests() throws NoConnectionException
+	{
+		if (this.queuedRequests.isEmpty())
+			return;
+		
+		List<Request> requests = new ArrayList<>(this.queuedRequests);
+		this.queuedRequests.clear();
+		List<ResponseReplicate> responses = this.client.sendAll(requests);
+		
+		// A failed request doesn't stop the rest of the batch from being sent
+		for (int i = 0; i < responses.size(); i++)
+		{
+			if (responses.get(i) == null)
+				System.err.println("No response to " + requests.get(i));
+		}
+	}
+	
 	/**
 	 * Closes the connections between the client and the server
 	 */
@@ -199,7 +248,7 @@ public class FileReaderClient extends AbstractFileReader
 		if (contentIsAttribute || contentType == ContentType.XML)
 			return parseVariableFromXmlResponse(response, contentName, contentIsAttribute);
 		else
-			return parseVariableFromJsonResponse(response, contentName);
+			return parseVariableFromJsonResponse(response, contentName, contentType);
 	}
 	
 	private static String parseVariableFromXmlResponse(ResponseReplicate response, 
@@ -210,7 +259,7 @@ public class FileReaderClient extends AbstractFileReader
 		try
 		{
 			reader = XMLIOAccessor.createReader(new ByteArrayInputStream(
-					response.getContent().getBytes()));
+					response.getContentBytes()));
 			while (reader.hasNext())
 			{
 				if (reader.isStartElement())
@@ -240,14 +289,16 @@ public class FileReaderClient extends AbstractFileReader
 	
 	@SuppressWarnings("resource")
 	private static String parseVariableFromJsonResponse(ResponseReplicate response, 
-			String contentName) throws JsonParseException, IOException
+			String contentName, ContentType contentType) throws JsonParseException, 
+			IOException
 	{
 		JsonParser reader = null;
 		
 		try
 		{
-			reader = JsonIOAccessor.createReader(
-					new ByteArrayInputStream(response.getContent().getBytes()));
+			// Smile and cbor are parsed just like json
+			reader = contentType.createJsonReader(
+					new ByteArrayInputStream(response.getContentBytes()));
 			JsonToken token = reader.nextToken();
 			while (token != null)
 			{
@@ -0,0 +1,263 @@
+package nexus_http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * FileRegionEntity is a response entity that contains a file or a part of it. The content 
+ * is never read into the heap as a whole. When the server provides the socket channel of 
+ * the connection (see {@link Server#SOCKET_CHANNEL_ATTRIBUTE}), the content is transferred 
+ * from the file to the socket with {@link FileChannel#transferTo(long, long, 
+ * WritableByteChannel)}, which lets the operating system copy the data directly 
+ * (sendfile). Otherwise the content is written through the output stream in small pieces. 
+ * The content may also be read from a memory mapped copy of the file.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class FileRegionEntity extends AbstractHttpEntity
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private final File file;
+	private final long start, length;
+	private ByteBuffer mappedFile;
+	private SocketChannel socketChannel;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new entity
+	 * @param file The file that contains the content
+	 * @param start The index of the first byte of the content in the file
+	 * @param length How many bytes of the file are included in the content
+	 */
+	public FileRegionEntity(File file, long start, long length)
+	{
+		if (start < 0 || length < 0)
+			throw new IllegalArgumentException("Invalid file region " + start + " + " + length);
+		
+		this.file = file;
+		this.start = start;
+		this.length = length;
+		this.mappedFile = null;
+		this.socketChannel = null;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+	
+	@Override
+	public long getContentLength()
+	{
+		return this.length;
+	}
+	
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		if (this.mappedFile != null)
+			return new MappedInputStream(getMappedRegion());
+		return new FileRegionInputStream(FileChannel.open(this.file.toPath(), 
+				StandardOpenOption.READ), this.start, this.length);
+	}
+	
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException
+	{
+		// Writes directly to the socket when possible. Anything the output stream has
+		// buffered (the response head) must be sent first.
+		WritableByteChannel target;
+		if (this.socketChannel != null && this.socketChannel.isBlocking())
+		{
+			outstream.flush();
+			target = this.socketChannel;
+		}
+		else
+			target = Channels.newChannel(outstream);
+		
+		if (this.mappedFile != null)
+		{
+			ByteBuffer content = getMappedRegion();
+			while (content.hasRemaining())
+			{
+				target.write(content);
+			}
+			return;
+		}
+		
+		try (FileChannel channel = FileChannel.open(this.file.toPath(), 
+				StandardOpenOption.READ))
+		{
+			long position = this.start;
+			long end = this.start + this.length;
+			while (position < end)
+			{
+				long transferred = channel.transferTo(position, end - position, target);
+				// If the file got shorter, the promised amount of bytes can't be sent
+				if (transferred <= 0 && position >= channel.size())
+					throw new IOException(this.file + " was truncated while it was being sent");
+				position += transferred;
+			}
+		}
+	}
+	
+	@Override
+	public boolean isStreaming()
+	{
+		return false;
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * Makes the entity read its content from a memory mapped copy of the file
+	 * @param mappedFile The memory mapped content of the whole file
+	 */
+	public void setMappedFile(ByteBuffer mappedFile)
+	{
+		if (mappedFile != null && mappedFile.capacity() < this.start + this.length)
+			throw new IllegalArgumentException("The mapped file is too short");
+		this.mappedFile = mappedFile;
+	}
+	
+	/**
+	 * Makes the entity write its content directly to the socket of the connection, if the 
+	 * server has made the socket available in the context
+	 * @param context The context of the request
+	 */
+	public void setTarget(HttpContext context)
+	{
+		Object channel = context.getAttribute(Server.SOCKET_CHANNEL_ATTRIBUTE);
+		if (channel instanceof SocketChannel)
+			this.socketChannel = (SocketChannel) channel;
+		else
+			this.socketChannel = null;
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	private ByteBuffer getMappedRegion()
+	{
+		// The buffer is duplicated so that the entity can be written multiple times and from
+		// multiple threads
+		ByteBuffer region = this.mappedFile.duplicate();
+		region.limit((int) (this.start + this.length));
+		region.position((int) this.start);
+		return region;
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class FileRegionInputStream extends InputStream
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final FileChannel channel;
+		private long position, remaining;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public FileRegionInputStream(FileChannel channel, long start, long length)
+		{
+			this.channel = channel;
+			this.position = start;
+			this.remaining = length;
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			if (read(b, 0, 1) < 0)
+				return -1;
+			return b[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (this.remaining <= 0)
+				return -1;
+			if (len == 0)
+				return 0;
+			
+			int amount = (int) Math.min(len, this.remaining);
+			int read = this.channel.read(ByteBuffer.wrap(b, off, amount), this.position);
+			if (read < 0)
+				return -1;
+			
+			this.position += read;
+			this.remaining -= read;
+			return read;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			this.channel.close();
+		}
+	}
+	
+	private static class MappedInputStream extends InputStream
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final ByteBuffer content;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public MappedInputStream(ByteBuffer content)
+		{
+			this.content = content;
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public int read()
+		{
+			if (!this.content.hasRemaining())
+				return -1;
+			return this.content.get() & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (!this.content.hasRemaining())
+				return -1;
+			
+			int amount = Math.min(len, this.content.remaining());
+			this.content.get(b, off, amount);
+			return amount;
+		}
+	}
+}
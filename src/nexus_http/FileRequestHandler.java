@@ -0,0 +1,448 @@
+package nexus_http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * FileRequestHandler serves the files under a certain directory. The files are streamed 
+ * from the disk with a {@link FileRegionEntity}, so even very large files don't take 
+ * space in the heap. The handler supports single byte range requests (Range and 
+ * If-Range) as well as conditional requests based on the ETag and Last-Modified headers. 
+ * Small files are memory mapped and the mappings are kept for the most recently used 
+ * files, up to a certain total size. Only GET and HEAD requests are accepted.<br> 
+ * With {@link Server}, the files are transferred straight to the socket. 
+ * {@link NonBlockingServer} streams them in chunks.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class FileRequestHandler implements RequestHandler
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter.ofPattern( 
+			"EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	
+	private final File directory;
+	private final String pathPrefix;
+	private final int prefixLength;
+	private final boolean useEncoding;
+	private MappedFileCache mappedFiles;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new handler. By default, files up to 256 kB are memory mapped and up to 64 
+	 * MB of mappings are kept.
+	 * @param directory The directory that contains the served files
+	 * @param pathPrefix The path under which the files are served, like "/files". The file 
+	 * "a/b.txt" in the directory would then be requested from "/files/a/b.txt".
+	 * @param useEncoding Are the request paths encoded (in UTF-8)
+	 */
+	public FileRequestHandler(File directory, String pathPrefix, boolean useEncoding)
+	{
+		try
+		{
+			this.directory = directory.getCanonicalFile();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Can't resolve the directory " + directory, e);
+		}
+		if (!this.directory.isDirectory())
+			throw new IllegalArgumentException(directory + " is not a directory");
+		
+		while (pathPrefix.endsWith("/"))
+		{
+			pathPrefix = pathPrefix.substring(0, pathPrefix.length() - 1);
+		}
+		this.pathPrefix = pathPrefix;
+		this.prefixLength = pathPrefix.isEmpty() ? 0 : Request.splitPath(pathPrefix).length;
+		this.useEncoding = useEncoding;
+		this.mappedFiles = new MappedFileCache(256 * 1024, 64 * 1024 * 1024);
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+			throws org.apache.http.HttpException, IOException
+	{
+		try
+		{
+			MethodType method = MethodType.parseFromString( 
+					request.getRequestLine().getMethod());
+			if (method != MethodType.GET && method != MethodType.HEAD)
+				throw new MethodNotSupportedException(method);
+			
+			File file = findFile(request, context);
+			// The values are read only once so that the headers stay consistent
+			long length = file.length();
+			long lastModified = file.lastModified();
+			String eTag = createETag(length, lastModified);
+			String lastModifiedDate = HTTP_DATE_FORMAT.format(Instant.ofEpochMilli( 
+					lastModified));
+			
+			response.setHeader("ETag", eTag);
+			response.setHeader("Last-Modified", lastModifiedDate);
+			response.setHeader("Accept-Ranges", "bytes");
+			
+			if (isNotModified(request, eTag, lastModified))
+			{
+				response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+				return;
+			}
+			
+			// Finds out which part of the file is sent
+			long start = 0;
+			long end = length - 1;
+			Header rangeHeader = request.getFirstHeader("Range");
+			if (rangeHeader != null && rangeMayBeUsed(request, eTag, lastModified))
+			{
+				long[] range = parseRange(rangeHeader.getValue(), length);
+				if (range != null && range.length == 0)
+				{
+					response.setStatusCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					response.setHeader("Content-Range", "bytes */" + length);
+					response.setEntity(new StringEntity("Requested range not satisfiable", 
+							ContentType.TEXT_PLAIN));
+					return;
+				}
+				if (range != null)
+				{
+					start = range[0];
+					end = range[1];
+					response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+					response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + 
+							length);
+				}
+			}
+			if (start == 0 && end == length - 1)
+				response.setStatusCode(HttpStatus.SC_OK);
+			
+			FileRegionEntity entity = new FileRegionEntity(file, start, end - start + 1);
+			entity.setContentType(guessContentType(file));
+			entity.setMappedFile(this.mappedFiles.get(file, length, lastModified));
+			entity.setTarget(context);
+			response.setEntity(entity);
+		}
+		catch (HttpException e)
+		{
+			response.setStatusCode(e.getStatusCode());
+			response.setEntity(new StringEntity(e.getMessage(), ContentType.TEXT_PLAIN));
+		}
+	}
+	
+	@Override
+	public String getAcceptedPath()
+	{
+		return this.pathPrefix + "/*";
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * Changes how files are memory mapped. Previously mapped files are released.
+	 * @param maxFileSize The size of the largest file that is memory mapped, in bytes. 0 
+	 * means that no files are memory mapped.
+	 * @param capacity How many bytes of files may be memory mapped at once
+	 */
+	public void setMemoryMapping(int maxFileSize, long capacity)
+	{
+		this.mappedFiles = new MappedFileCache(maxFileSize, capacity);
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	private File findFile(HttpRequest request, HttpContext context) throws NotFoundException
+	{
+		// The router has usually split the path already
+		String[] path = RequestRouter.getPath(context);
+		Request parsedRequest;
+		if (path == null)
+			parsedRequest = new Request(request, this.useEncoding);
+		else
+			parsedRequest = new Request(request, path, this.useEncoding);
+		
+		String requestedPath = request.getRequestLine().getUri();
+		if (parsedRequest.getPathLength() <= this.prefixLength)
+			throw new NotFoundException(requestedPath);
+		
+		// Each path part must be a plain file or directory name so that the request can't
+		// reach outside the directory
+		File file = this.directory;
+		for (int i = this.prefixLength; i < parsedRequest.getPathLength(); i++)
+		{
+			String part = parsedRequest.getPathPart(i);
+			if (part.isEmpty() || part.equals(".") || part.equals("..") || 
+					part.indexOf('/') >= 0 || part.indexOf('\\') >= 0 || 
+					part.indexOf('\0') >= 0)
+				throw new NotFoundException(requestedPath);
+			file = new File(file, part);
+		}
+		
+		// Symbolic links may still lead elsewhere
+		try
+		{
+			File canonical = file.getCanonicalFile();
+			if (!canonical.toPath().startsWith(this.directory.toPath()) || 
+					!canonical.isFile() || !canonical.canRead())
+				throw new NotFoundException(requestedPath);
+			return canonical;
+		}
+		catch (IOException e)
+		{
+			throw new NotFoundException(requestedPath);
+		}
+	}
+	
+	private static String createETag(long length, long lastModified)
+	{
+		return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+	}
+	
+	private static boolean isNotModified(HttpRequest request, String eTag, long lastModified)
+	{
+		// If-None-Match is used instead of If-Modified-Since when both are present
+		Header noneMatch = request.getFirstHeader("If-None-Match");
+		if (noneMatch != null)
+		{
+			for (String candidate : noneMatch.getValue().split(","))
+			{
+				candidate = candidate.trim();
+				if (candidate.startsWith("W/"))
+					candidate = candidate.substring(2);
+				if (candidate.equals("*") || candidate.equals(eTag))
+					return true;
+			}
+			return false;
+		}
+		
+		Header modifiedSince = request.getFirstHeader("If-Modified-Since");
+		if (modifiedSince != null)
+		{
+			long since = parseDate(modifiedSince.getValue());
+			// The dates are only accurate to a second
+			return since >= 0 && lastModified / 1000 <= since / 1000;
+		}
+		
+		return false;
+	}
+	
+	private static boolean rangeMayBeUsed(HttpRequest request, String eTag, 
+			long lastModified)
+	{
+		// With If-Range, the range is only used if the client has the current version
+		Header ifRange = request.getFirstHeader("If-Range");
+		if (ifRange == null)
+			return true;
+		
+		String value = ifRange.getValue().trim();
+		if (value.startsWith("\"") || value.startsWith("W/"))
+			return value.equals(eTag);
+		
+		long date = parseDate(value);
+		return date >= 0 && date / 1000 == lastModified / 1000;
+	}
+	
+	/**
+	 * Parses a byte range from a Range header
+	 * @param header The value of the Range header
+	 * @param length The length of the file
+	 * @return The first and the last index of the range. An empty array if the range can't 
+	 * be satisfied. Null if the header should be ignored.
+	 */
+	private static long[] parseRange(String header, long length)
+	{
+		header = header.trim();
+		// Multiple ranges are not supported, in which case the whole file is sent
+		if (!header.startsWith("bytes=") || header.indexOf(',') >= 0)
+			return null;
+		
+		String range = header.substring(6).trim();
+		int dashIndex = range.indexOf('-');
+		if (dashIndex < 0)
+			return null;
+		
+		String first = range.substring(0, dashIndex).trim();
+		String last = range.substring(dashIndex + 1).trim();
+		try
+		{
+			// "-n" means the last n bytes
+			if (first.isEmpty())
+			{
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength <= 0 || length == 0)
+					return new long[0];
+				return new long[] {Math.max(0, length - suffixLength), length - 1};
+			}
+			
+			long start = Long.parseLong(first);
+			long end = length - 1;
+			if (!last.isEmpty())
+			{
+				end = Long.parseLong(last);
+				if (end < start)
+					return null;
+				end = Math.min(end, length - 1);
+			}
+			if (start < 0)
+				return null;
+			if (start >= length)
+				return new long[0];
+			
+			return new long[] {start, end};
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+	
+	private static long parseDate(String date)
+	{
+		try
+		{
+			return Instant.from(HTTP_DATE_FORMAT.parse(date.trim())).toEpochMilli();
+		}
+		catch (DateTimeParseException e)
+		{
+			return -1;
+		}
+	}
+	
+	private static String guessContentType(File file)
+	{
+		String contentType = URLConnection.guessContentTypeFromName(file.getName());
+		if (contentType == null)
+			return DEFAULT_CONTENT_TYPE;
+		return contentType;
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class MappedFileCache
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final int maxFileSize;
+		private final long capacity;
+		private final LinkedHashMap<File, MappedFile> files;
+		private long size;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public MappedFileCache(int maxFileSize, long capacity)
+		{
+			this.maxFileSize = maxFileSize;
+			this.capacity = capacity;
+			// The files are kept in the order of use
+			this.files = new LinkedHashMap<>(16, 0.75f, true);
+			this.size = 0;
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		public ByteBuffer get(File file, long length, long lastModified)
+		{
+			if (length == 0 || length > this.maxFileSize || length > this.capacity)
+				return null;
+			
+			synchronized (this.files)
+			{
+				MappedFile mapped = this.files.get(file);
+				if (mapped != null && mapped.length == length && 
+						mapped.lastModified == lastModified)
+					return mapped.content;
+				if (mapped != null)
+				{
+					this.files.remove(file);
+					this.size -= mapped.length;
+				}
+			}
+			
+			// The file is mapped outside the lock. If multiple threads map the same file at
+			// once, one of the mappings is kept.
+			ByteBuffer content;
+			try (FileChannel channel = FileChannel.open(file.toPath(), 
+					StandardOpenOption.READ))
+			{
+				if (channel.size() != length)
+					return null;
+				content = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			}
+			catch (IOException e)
+			{
+				return null;
+			}
+			
+			synchronized (this.files)
+			{
+				MappedFile previous = this.files.put(file, new MappedFile(content, length, 
+						lastModified));
+				if (previous != null)
+					this.size -= previous.length;
+				this.size += length;
+				
+				// The mappings are released by the garbage collector once they're no
+				// longer used
+				Iterator<Map.Entry<File, MappedFile>> iterator = 
+						this.files.entrySet().iterator();
+				while (this.size > this.capacity && iterator.hasNext())
+				{
+					MappedFile removed = iterator.next().getValue();
+					iterator.remove();
+					this.size -= removed.length;
+				}
+			}
+			
+			return content;
+		}
+	}
+	
+	private static class MappedFile
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final ByteBuffer content;
+		private final long length, lastModified;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public MappedFile(ByteBuffer content, long length, long lastModified)
+		{
+			this.content = content;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+}
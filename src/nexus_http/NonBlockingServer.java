@@ -0,0 +1,1157 @@
+package nexus_http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.MethodNotSupportedException;
+import org.apache.http.ParseException;
+import org.apache.http.ProtocolException;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.RequestLine;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicLineFormatter;
+import org.apache.http.message.BasicLineParser;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.protocol.ResponseDate;
+import org.apache.http.protocol.ResponseServer;
+
+/**
+ * NonBlockingServer works like {@link Server}, except that the connections are handled by a 
+ * few selector based event loops instead of one thread per connection. This allows the 
+ * server to keep a very large amount of idle keep-alive connections open. The requests are 
+ * still handled by the same (blocking) request handlers, which are run in a separate pool 
+ * of worker threads so that they don't stall the event loops. The response bodies are 
+ * streamed: the worker writes the body into a small queue of chunks, from which the event 
+ * loop takes the next chunk whenever the socket can accept more data. A worker writing a 
+ * large body waits while the queue is full, so only a few chunks per connection are ever 
+ * held in memory.
+ *
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class NonBlockingServer
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private int port, eventLoopAmount, workerAmount;
+	private RequestRouter router;
+	private ServerSocketChannel serverChannel;
+	private EventLoop[] eventLoops;
+	private ThreadPoolExecutor workerPool;
+	
+	private static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+	private static final int MAX_HEADER_LENGTH = 64 * 1024;
+	private static final int MAX_BODY_LENGTH = 16 * 1024 * 1024;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int BODY_CHUNK_SIZE = 16 * 1024;
+	private static final int MAX_QUEUED_BODY_CHUNKS = 4;
+	private static final int WORKER_QUEUE_SIZE_PER_WORKER = 64;
+	private static final long KEEP_ALIVE_MILLIS = 60000;
+	private static final int ACCEPT_BACKLOG = 1024;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new server that uses one event loop per available processor
+	 * @param port The port number the server responds to
+	 */
+	public NonBlockingServer(int port)
+	{
+		this(port, Runtime.getRuntime().availableProcessors(), 
+				Runtime.getRuntime().availableProcessors() * 4);
+	}
+	
+	/**
+	 * Creates a new server
+	 * @param port The port number the server responds to
+	 * @param eventLoopAmount How many event loop threads handle the connections
+	 * @param workerAmount How many worker threads run the request handlers. This limits 
+	 * how many requests can be handled at the same time.
+	 */
+	public NonBlockingServer(int port, int eventLoopAmount, int workerAmount)
+	{
+		if (eventLoopAmount <= 0 || workerAmount <= 0)
+			throw new IllegalArgumentException("Invalid thread amounts: " + eventLoopAmount + 
+					" event loops, " + workerAmount + " workers");
+		
+		this.port = port;
+		this.eventLoopAmount = eventLoopAmount;
+		this.workerAmount = workerAmount;
+		this.router = new RequestRouter();
+		this.serverChannel = null;
+		this.eventLoops = null;
+		this.workerPool = null;
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How many client connections are currently open
+	 */
+	public int getOpenConnectionAmount()
+	{
+		EventLoop[] loops = this.eventLoops;
+		if (loops == null)
+			return 0;
+		
+		int connections = 0;
+		for (EventLoop loop : loops)
+		{
+			connections += loop.connectionAmount.get();
+		}
+		return connections;
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Adds a new handler to the request handlers informed about client requests
+	 * @param handler The handler that will handle requests in this server
+	 */
+	public void addRequestHandler(RequestHandler handler)
+	{
+		this.router.register(handler.getAcceptedPath(), handler);
+	}
+	
+	/**
+	 * Adds a new handler to the request handlers informed about client requests. This can 
+	 * be used along with the {@link #addRequestHandler(RequestHandler)} when a single 
+	 * handler can handle multiple paths
+	 * @param handler The handler that will handle requests in this server
+	 * @param acceptedPath The request path the handler uses
+	 */
+	public void addRequestHandler(RequestHandler handler, String acceptedPath)
+	{
+		this.router.register(acceptedPath, handler);
+	}
+	
+	/**
+	 * The server starts listening to client requests
+	 */
+	public void start()
+	{
+		// If the server is already active, doesn't do anything
+		if (this.eventLoops != null)
+			return;
+		
+		// The handler paths are compiled before any requests arrive
+		this.router.prepare();
+		
+		// Sets up the http protocol processor
+		HttpProcessor processor = HttpProcessorBuilder.create()
+				.add(new ResponseDate())
+                .add(new ResponseServer("Test/1.1"))
+                .add(new ResponseContent())
+                .add(new ResponseConnControl()).build();
+		
+		this.workerPool = new ThreadPoolExecutor(this.workerAmount, this.workerAmount, 60, 
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+				this.workerAmount * WORKER_QUEUE_SIZE_PER_WORKER), 
+				new DaemonThreadFactory("Nexus worker"));
+		
+		try
+		{
+			this.serverChannel = ServerSocketChannel.open();
+			this.serverChannel.socket().bind(new InetSocketAddress(this.port), ACCEPT_BACKLOG);
+			this.serverChannel.configureBlocking(false);
+			
+			EventLoop[] loops = new EventLoop[this.eventLoopAmount];
+			for (int i = 0; i < loops.length; i++)
+			{
+				loops[i] = new EventLoop(i, processor, this.router, this.workerPool);
+			}
+			// The first loop also accepts the new connections and distributes them
+			loops[0].listen(this.serverChannel, loops);
+			
+			for (EventLoop loop : loops)
+			{
+				loop.start();
+			}
+			this.eventLoops = loops;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to start the event loops");
+			e.printStackTrace();
+			
+			closeServerChannel();
+			this.workerPool.shutdown();
+			this.workerPool = null;
+		}
+	}
+	
+	/**
+	 * The server ends listening to client requests and closes the open connections
+	 */
+	public void end()
+	{
+		if (this.eventLoops == null)
+			return;
+		
+		closeServerChannel();
+		for (EventLoop loop : this.eventLoops)
+		{
+			loop.shutdown();
+		}
+		this.eventLoops = null;
+		
+		this.workerPool.shutdown();
+		this.workerPool = null;
+	}
+	
+	private void closeServerChannel()
+	{
+		if (this.serverChannel == null)
+			return;
+		
+		try
+		{
+			this.serverChannel.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to close the server socket");
+			e.printStackTrace();
+		}
+		this.serverChannel = null;
+	}
+	
+	private static HttpResponse createErrorResponse(int status, String reason)
+	{
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, reason);
+		response.setHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
+		return response;
+	}
+	
+	private static int indexOfHeaderEnd(byte[] data, int from, int length)
+	{
+		for (int i = Math.max(0, from); i + 3 < length; i++)
+		{
+			if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && 
+					data[i + 3] == '\n')
+				return i;
+		}
+		return -1;
+	}
+	
+	
+	private static ByteBuffer serializeHead(HttpResponse response)
+	{
+		StringBuilder head = new StringBuilder(256);
+		head.append(BasicLineFormatter.formatStatusLine(response.getStatusLine(), null));
+		head.append("\r\n");
+		for (Header header : response.getAllHeaders())
+		{
+			head.append(BasicLineFormatter.formatHeader(header, null));
+			head.append("\r\n");
+		}
+		head.append("\r\n");
+		
+		return ByteBuffer.wrap(head.toString().getBytes(HEADER_CHARSET));
+	}
+	
+	
+	// SUBCLASSES	---------------------------
+	
+	private static class EventLoop extends Thread
+	{
+		// ATTRIBUTES	-------------------------------------------------------
+		
+		private final Selector selector;
+		private final HttpProcessor processor;
+		private final RequestRouter router;
+		private final ThreadPoolExecutor workerPool;
+		private final Queue<Runnable> tasks;
+		private final ByteBuffer readBuffer;
+		private final AtomicInteger connectionAmount;
+		
+		private ServerSocketChannel serverChannel;
+		private EventLoop[] loops;
+		private int nextLoopIndex;
+		private long lastIdleCheckMillis;
+		private volatile boolean running;
+		
+		
+		// CONSTRUCTOR	-------------------------------------------------------
+		
+		public EventLoop(int index, HttpProcessor processor, 
+				RequestRouter router, ThreadPoolExecutor workerPool)
+				throws IOException
+		{
+			super("Nexus event loop " + index);
+			setDaemon(true);
+			
+			this.selector = Selector.open();
+			this.processor = processor;
+			this.router = router;
+			this.workerPool = workerPool;
+			this.tasks = new ConcurrentLinkedQueue<>();
+			this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+			this.connectionAmount = new AtomicInteger();
+			this.serverChannel = null;
+			this.loops = null;
+			this.nextLoopIndex = 0;
+			this.lastIdleCheckMillis = System.currentTimeMillis();
+			this.running = true;
+		}
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------------------
+		
+		@Override
+		public void run()
+		{
+			while (this.running)
+			{
+				try
+				{
+					this.selector.select(1000);
+					runTasks();
+					
+					Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+					while (keys.hasNext())
+					{
+						SelectionKey key = keys.next();
+						keys.remove();
+						
+						if (!key.isValid())
+							continue;
+						if (key.isAcceptable())
+							accept();
+						else
+						{
+							Connection connection = (Connection) key.attachment();
+							if (key.isWritable())
+								connection.onWritable();
+							if (key.isValid() && key.isReadable())
+								connection.onReadable();
+						}
+					}
+					
+					closeIdleConnections();
+				}
+				catch (IOException e)
+				{
+					System.err.println("I/O error in the event loop: " + e.getMessage());
+				}
+			}
+			
+			// Closes all connections once the loop ends
+			for (SelectionKey key : this.selector.keys())
+			{
+				if (key.attachment() instanceof Connection)
+					((Connection) key.attachment()).close();
+			}
+			try
+			{
+				this.selector.close();
+			}
+			catch (IOException ignore)
+			{
+				// Ignores the exception
+			}
+		}
+		
+		
+		// OTHER METHODS	---------------------------------------------------
+		
+		public void listen(ServerSocketChannel serverChannel, EventLoop[] loops)
+				throws ClosedChannelException
+		{
+			this.serverChannel = serverChannel;
+			this.loops = loops;
+			serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+		}
+		
+		public void shutdown()
+		{
+			this.running = false;
+			this.selector.wakeup();
+		}
+		
+		public void execute(Runnable task)
+		{
+			// Tasks from other threads are run in the loop thread on the next round
+			this.tasks.offer(task);
+			this.selector.wakeup();
+		}
+		
+		private void runTasks()
+		{
+			Runnable task;
+			while ((task = this.tasks.poll()) != null)
+			{
+				task.run();
+			}
+		}
+		
+		private void accept() throws IOException
+		{
+			SocketChannel channel;
+			while ((channel = this.serverChannel.accept()) != null)
+			{
+				final SocketChannel accepted = channel;
+				accepted.configureBlocking(false);
+				accepted.socket().setTcpNoDelay(true);
+				
+				// The connections are distributed evenly between the loops
+				final EventLoop target = this.loops[this.nextLoopIndex];
+				this.nextLoopIndex = (this.nextLoopIndex + 1) % this.loops.length;
+				
+				if (target == this)
+					register(accepted);
+				else
+				{
+					target.execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							target.register(accepted);
+						}
+					});
+				}
+			}
+		}
+		
+		private void register(SocketChannel channel)
+		{
+			try
+			{
+				Connection connection = new Connection(this, channel);
+				connection.key = channel.register(this.selector, SelectionKey.OP_READ, 
+						connection);
+				this.connectionAmount.incrementAndGet();
+			}
+			catch (ClosedChannelException e)
+			{
+				// The client already left
+			}
+		}
+		
+		private void closeIdleConnections()
+		{
+			long now = System.currentTimeMillis();
+			if (now - this.lastIdleCheckMillis < 1000)
+				return;
+			this.lastIdleCheckMillis = now;
+			
+			for (SelectionKey key : this.selector.keys())
+			{
+				if (key.attachment() instanceof Connection)
+				{
+					Connection connection = (Connection) key.attachment();
+					if (connection.isIdle() && 
+							now - connection.lastActivityMillis > KEEP_ALIVE_MILLIS)
+						connection.close();
+				}
+			}
+		}
+	}
+	
+	private static class Connection
+	{
+		// ATTRIBUTES	-------------------------------------------------------
+		
+		private final EventLoop loop;
+		private final SocketChannel channel;
+		private final Deque<ByteBuffer> output;
+		private final HttpContext context;
+		private SelectionKey key;
+		
+		private byte[] input;
+		private BodyStream body;
+		private int inputLength, headerScanIndex;
+		private boolean handling, closeAfterWrite, closed;
+		private long lastActivityMillis;
+		
+		
+		// CONSTRUCTOR	-------------------------------------------------------
+		
+		public Connection(EventLoop loop, SocketChannel channel)
+		{
+			this.loop = loop;
+			this.channel = channel;
+			this.output = new ArrayDeque<>();
+			this.context = new BasicHttpContext(null);
+			this.key = null;
+			this.input = null;
+			this.body = null;
+			this.inputLength = 0;
+			this.headerScanIndex = 0;
+			this.handling = false;
+			this.closeAfterWrite = false;
+			this.closed = false;
+			this.lastActivityMillis = System.currentTimeMillis();
+		}
+		
+		
+		// OTHER METHODS	---------------------------------------------------
+		
+		public boolean isIdle()
+		{
+			return !this.handling && this.output.isEmpty();
+		}
+		
+		public void onReadable()
+		{
+			// The loop's buffer is used for reading so that idle connections don't
+			// reserve any memory
+			ByteBuffer buffer = this.loop.readBuffer;
+			int read;
+			try
+			{
+				buffer.clear();
+				read = this.channel.read(buffer);
+			}
+			catch (IOException e)
+			{
+				close();
+				return;
+			}
+			
+			if (read < 0)
+			{
+				close();
+				return;
+			}
+			if (read == 0)
+				return;
+			
+			this.lastActivityMillis = System.currentTimeMillis();
+			buffer.flip();
+			appendInput(buffer);
+			processInput();
+		}
+		
+		public void onWritable()
+		{
+			try
+			{
+				while (true)
+				{
+					ByteBuffer next = this.output.peek();
+					if (next == null)
+					{
+						// A streamed body is taken one chunk at a time, whenever the 
+						// previous chunk has been written
+						if (this.body == null)
+							break;
+						next = this.body.poll();
+						if (next == null)
+						{
+							// Waits until the worker has written more of the body
+							this.key.interestOps(0);
+							return;
+						}
+						if (next == BodyStream.END)
+						{
+							this.body = null;
+							break;
+						}
+						this.output.add(next);
+					}
+					
+					this.channel.write(next);
+					if (next.hasRemaining())
+						return;
+					this.output.poll();
+				}
+			}
+			catch (IOException e)
+			{
+				close();
+				return;
+			}
+			
+			// Once everything has been written, continues with the next request
+			this.handling = false;
+			this.lastActivityMillis = System.currentTimeMillis();
+			if (this.closeAfterWrite)
+				close();
+			else
+			{
+				this.key.interestOps(SelectionKey.OP_READ);
+				processInput();
+			}
+		}
+		
+		public void close()
+		{
+			if (this.closed)
+				return;
+			this.closed = true;
+			
+			this.loop.connectionAmount.decrementAndGet();
+			this.input = null;
+			this.output.clear();
+			// A worker that is still writing the body is released
+			if (this.body != null)
+			{
+				this.body.abort();
+				this.body = null;
+			}
+			if (this.key != null)
+				this.key.cancel();
+			try
+			{
+				this.channel.close();
+			}
+			catch (IOException ignore)
+			{
+				// Ignores the exception
+			}
+		}
+		
+		private void appendInput(ByteBuffer buffer)
+		{
+			int required = this.inputLength + buffer.remaining();
+			if (this.input == null)
+				this.input = new byte[Math.max(required, 1024)];
+			else if (required > this.input.length)
+			{
+				byte[] larger = new byte[Math.max(required, this.input.length * 2)];
+				System.arraycopy(this.input, 0, larger, 0, this.inputLength);
+				this.input = larger;
+			}
+			
+			int amount = buffer.remaining();
+			buffer.get(this.input, this.inputLength, amount);
+			this.inputLength += amount;
+		}
+		
+		private void consumeInput(int amount)
+		{
+			if (amount >= this.inputLength)
+			{
+				this.input = null;
+				this.inputLength = 0;
+			}
+			else
+			{
+				System.arraycopy(this.input, amount, this.input, 0, this.inputLength - amount);
+				this.inputLength -= amount;
+			}
+			this.headerScanIndex = 0;
+		}
+		
+		private void processInput()
+		{
+			// Requests are handled one at a time. Pipelined requests wait in the buffer.
+			if (this.handling || this.closed || this.closeAfterWrite || this.input == null)
+				return;
+			
+			int headerEnd = indexOfHeaderEnd(this.input, this.headerScanIndex, 
+					this.inputLength);
+			if (headerEnd < 0)
+			{
+				if (this.inputLength > MAX_HEADER_LENGTH)
+					sendError(HttpStatus.SC_REQUEST_URI_TOO_LONG, "Request Header Too Long");
+				else
+					this.headerScanIndex = Math.max(0, this.inputLength - 3);
+				return;
+			}
+			
+			HttpRequest request;
+			int contentLength;
+			try
+			{
+				String[] lines = new String(this.input, 0, headerEnd, HEADER_CHARSET).split(
+						"\r\n");
+				RequestLine requestLine = BasicLineParser.parseRequestLine(lines[0], null);
+				
+				contentLength = 0;
+				Header[] headers = new Header[lines.length - 1];
+				for (int i = 1; i < lines.length; i++)
+				{
+					headers[i - 1] = BasicLineParser.parseHeader(lines[i], null);
+					if (headers[i - 1].getName().equalsIgnoreCase(HTTP.CONTENT_LEN))
+						contentLength = Integer.parseInt(headers[i - 1].getValue().trim());
+					else if (headers[i - 1].getName().equalsIgnoreCase(HTTP.TRANSFER_ENCODING))
+					{
+						// Chunked request bodies are not supported
+						sendError(HttpStatus.SC_LENGTH_REQUIRED, "Length Required");
+						return;
+					}
+				}
+				
+				if (contentLength < 0 || contentLength > MAX_BODY_LENGTH)
+				{
+					sendError(HttpStatus.SC_REQUEST_TOO_LONG, "Request Entity Too Large");
+					return;
+				}
+				
+				// Waits until the whole body has been received
+				int requestLength = headerEnd + 4 + contentLength;
+				if (this.inputLength < requestLength)
+				{
+					this.headerScanIndex = headerEnd;
+					return;
+				}
+				
+				if (contentLength > 0)
+				{
+					BasicHttpEntityEnclosingRequest enclosingRequest = 
+							new BasicHttpEntityEnclosingRequest(requestLine);
+					byte[] body = new byte[contentLength];
+					System.arraycopy(this.input, headerEnd + 4, body, 0, contentLength);
+					enclosingRequest.setEntity(new ByteArrayEntity(body));
+					request = enclosingRequest;
+				}
+				else
+					request = new BasicHttpRequest(requestLine);
+				request.setHeaders(headers);
+				
+				consumeInput(requestLength);
+			}
+			catch (ParseException | NumberFormatException e)
+			{
+				sendError(HttpStatus.SC_BAD_REQUEST, "Bad Request");
+				return;
+			}
+			
+			// The request is handled in a worker thread since the handlers may block
+			this.handling = true;
+			this.key.interestOps(0);
+			try
+			{
+				this.loop.workerPool.execute(new RequestTask(this, request));
+			}
+			catch (RejectedExecutionException e)
+			{
+				this.handling = false;
+				sendError(HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+			}
+		}
+		
+		private void sendError(int status, String reason)
+		{
+			HttpResponse response = createErrorResponse(status, reason);
+			response.setHeader(HTTP.CONTENT_LEN, "0");
+			sendResponse(serializeHead(response), null, true);
+		}
+		
+		/**
+		 * Starts sending a response. Called in the loop thread.
+		 * @param head The serialized response head
+		 * @param body The stream the body is written into by a worker. Null if the response 
+		 * has no body.
+		 * @param close Should the connection be closed once the response has been sent
+		 */
+		private void sendResponse(ByteBuffer head, BodyStream body, boolean close)
+		{
+			if (this.closed)
+			{
+				if (body != null)
+					body.abort();
+				return;
+			}
+			
+			// The connection keeps handling the request until the whole body has been sent
+			this.handling = body != null;
+			this.body = body;
+			this.closeAfterWrite = close;
+			this.output.add(head);
+			
+			// Writes as much as possible right away and waits for the rest
+			this.key.interestOps(SelectionKey.OP_WRITE);
+			onWritable();
+		}
+		
+		/**
+		 * Continues sending the body once the worker has written a new chunk. Called in the 
+		 * loop thread.
+		 * @param body The body that has a new chunk available
+		 */
+		private void onBodyAvailable(BodyStream body)
+		{
+			// The chunk may belong to a response that was already cut short
+			if (this.closed || this.body != body)
+				return;
+			
+			this.key.interestOps(SelectionKey.OP_WRITE);
+			onWritable();
+		}
+	}
+	
+	private static class RequestTask implements Runnable
+	{
+		// ATTRIBUTES	-------------------------------------------------------
+		
+		private final Connection connection;
+		private final HttpRequest request;
+		
+		
+		// CONSTRUCTOR	-------------------------------------------------------
+		
+		public RequestTask(Connection connection, HttpRequest request)
+		{
+			this.connection = connection;
+			this.request = request;
+		}
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------------------
+		
+		@Override
+		public void run()
+		{
+			final EventLoop loop = this.connection.loop;
+			HttpContext context = this.connection.context;
+			ProtocolVersion version = this.request.getRequestLine().getProtocolVersion();
+			if (!version.lessEquals(HttpVersion.HTTP_1_1))
+				version = HttpVersion.HTTP_1_1;
+			
+			HttpResponse response = new BasicHttpResponse(version, HttpStatus.SC_OK, "OK");
+			context.setAttribute(HttpCoreContext.HTTP_REQUEST, this.request);
+			context.setAttribute(HttpCoreContext.HTTP_RESPONSE, response);
+			
+			HttpEntity entity = null;
+			try
+			{
+				loop.processor.process(this.request, context);
+				
+				HttpRequestHandler handler = loop.router.lookup(this.request);
+				if (handler == null)
+				{
+					response.setStatusCode(HttpStatus.SC_NOT_IMPLEMENTED);
+					response.setReasonPhrase("Not Implemented");
+				}
+				else
+					handler.handle(this.request, response, context);
+				
+				loop.processor.process(response, context);
+				entity = response.getEntity();
+			}
+			catch (HttpException e)
+			{
+				int status = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+				if (e instanceof MethodNotSupportedException)
+					status = HttpStatus.SC_NOT_IMPLEMENTED;
+				else if (e instanceof ProtocolException)
+					status = HttpStatus.SC_BAD_REQUEST;
+				
+				response = createErrorResponse(status, e.getMessage());
+				response.setHeader(HTTP.CONTENT_LEN, "0");
+				entity = null;
+			}
+			catch (IOException | RuntimeException e)
+			{
+				System.err.println("Failed to handle request " + this.request.getRequestLine());
+				e.printStackTrace();
+				
+				response = createErrorResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR, 
+						"Internal Server Error");
+				response.setHeader(HTTP.CONTENT_LEN, "0");
+				entity = null;
+			}
+			
+			// HEAD requests and some statuses never have a body
+			int status = response.getStatusLine().getStatusCode();
+			if (this.request.getRequestLine().getMethod().equalsIgnoreCase("HEAD") || 
+					status == HttpStatus.SC_NO_CONTENT || 
+					status == HttpStatus.SC_NOT_MODIFIED)
+				entity = null;
+			
+			final ByteBuffer head = serializeHead(response);
+			final BodyStream body = entity == null ? null : 
+					new BodyStream(this.connection, isChunked(response));
+			final boolean close = !keepAlive(this.request, response);
+			final Connection connection = this.connection;
+			
+			loop.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					connection.sendResponse(head, body, close);
+				}
+			});
+			
+			if (body == null)
+				return;
+			
+			// The body is written in this thread while the event loop sends it
+			try
+			{
+				entity.writeTo(body);
+				body.finish();
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// The response has already been started, so it can only be cut short
+				System.err.println("Failed to write the response to " + 
+						this.request.getRequestLine() + ": " + e.getMessage());
+				loop.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						connection.close();
+					}
+				});
+			}
+		}
+		
+		
+		// OTHER METHODS	---------------------------------------------------
+		
+		private static boolean isChunked(HttpResponse response)
+		{
+			// The content interceptor has already chosen the transfer coding
+			Header transferEncoding = response.getFirstHeader(HTTP.TRANSFER_ENCODING);
+			return transferEncoding != null && 
+					HTTP.CHUNK_CODING.equalsIgnoreCase(transferEncoding.getValue().trim());
+		}
+		
+		private static boolean keepAlive(HttpRequest request, HttpResponse response)
+		{
+			Header connectionHeader = response.getFirstHeader(HTTP.CONN_DIRECTIVE);
+			if (connectionHeader != null && 
+					HTTP.CONN_CLOSE.equalsIgnoreCase(connectionHeader.getValue()))
+				return false;
+			
+			// HTTP/1.0 connections are only kept alive on request
+			if (request.getRequestLine().getProtocolVersion().lessEquals(HttpVersion.HTTP_1_0))
+			{
+				Header requestHeader = request.getFirstHeader(HTTP.CONN_DIRECTIVE);
+				if (requestHeader == null)
+					return false;
+				for (HeaderElement element : requestHeader.getElements())
+				{
+					if (HTTP.CONN_KEEP_ALIVE.equalsIgnoreCase(element.getName()))
+						return true;
+				}
+				return false;
+			}
+			
+			return true;
+		}
+	}
+	
+	private static class BodyStream extends OutputStream
+	{
+		// ATTRIBUTES	-------------------------------------------------------
+		
+		/**
+		 * The marker that is queued after the last chunk of the body
+		 */
+		public static final ByteBuffer END = ByteBuffer.allocate(0);
+		
+		private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+		
+		private final Connection connection;
+		private final boolean chunked;
+		private final BlockingQueue<ByteBuffer> chunks;
+		private byte[] buffer;
+		private int count;
+		private volatile boolean aborted;
+		
+		
+		// CONSTRUCTOR	-------------------------------------------------------
+		
+		public BodyStream(Connection connection, boolean chunked)
+		{
+			this.connection = connection;
+			this.chunked = chunked;
+			this.chunks = new ArrayBlockingQueue<>(MAX_QUEUED_BODY_CHUNKS);
+			this.buffer = new byte[BODY_CHUNK_SIZE];
+			this.count = 0;
+			this.aborted = false;
+		}
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------------------
+		
+		@Override
+		public void write(int b) throws IOException
+		{
+			if (this.count == this.buffer.length)
+				sendBuffer();
+			this.buffer[this.count ++] = (byte) b;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			while (len > 0)
+			{
+				if (this.count == this.buffer.length)
+					sendBuffer();
+				
+				int amount = Math.min(len, this.buffer.length - this.count);
+				System.arraycopy(b, off, this.buffer, this.count, amount);
+				this.count += amount;
+				off += amount;
+				len -= amount;
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException
+		{
+			if (this.count > 0)
+				sendBuffer();
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			// The body only ends once the whole entity has been written
+			flush();
+		}
+		
+		
+		// OTHER METHODS	---------------------------------------------------
+		
+		/**
+		 * Sends the rest of the body and marks it complete. Called in the worker thread.
+		 * @throws IOException If the connection was closed or the client stopped reading
+		 */
+		public void finish() throws IOException
+		{
+			flush();
+			if (this.chunked)
+				send(ByteBuffer.wrap(LAST_CHUNK));
+			send(END);
+		}
+		
+		/**
+		 * Releases the worker writing the body. Called in the loop thread when the 
+		 * connection is closed.
+		 */
+		public void abort()
+		{
+			this.aborted = true;
+			this.chunks.clear();
+		}
+		
+		/**
+		 * @return The next chunk of the body. Null if the worker hasn't written it yet.
+		 */
+		public ByteBuffer poll()
+		{
+			return this.chunks.poll();
+		}
+		
+		private void sendBuffer() throws IOException
+		{
+			ByteBuffer data;
+			if (this.chunked)
+			{
+				byte[] size = (Integer.toHexString(this.count) + "\r\n").getBytes(HEADER_CHARSET);
+				data = ByteBuffer.allocate(size.length + this.count + 2);
+				data.put(size).put(this.buffer, 0, this.count).put((byte) '\r').put((byte) '\n');
+				data.flip();
+			}
+			else
+			{
+				// The buffer is handed to the loop as it is, so a new one is needed
+				data = ByteBuffer.wrap(this.buffer, 0, this.count);
+				this.buffer = new byte[BODY_CHUNK_SIZE];
+			}
+			this.count = 0;
+			
+			send(data);
+		}
+		
+		private void send(ByteBuffer data) throws IOException
+		{
+			// Waits while the queue is full, which happens when the client reads slower 
+			// than the body is written
+			try
+			{
+				if (this.aborted || !this.chunks.offer(data, KEEP_ALIVE_MILLIS, 
+						TimeUnit.MILLISECONDS))
+					throw new IOException("The client stopped receiving the response");
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while sending the response");
+			}
+			
+			final Connection connection = this.connection;
+			final BodyStream body = this;
+			connection.loop.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					connection.onBodyAvailable(body);
+				}
+			});
+		}
+	}
+	
+	private static class DaemonThreadFactory implements ThreadFactory
+	{
+		// ATTRIBUTES	------------------------------------------
+		
+		private final String namePrefix;
+		private final AtomicInteger createdThreads = new AtomicInteger();
+		
+		
+		// CONSTRUCTOR	------------------------------------------
+		
+		public DaemonThreadFactory(String namePrefix)
+		{
+			this.namePrefix = namePrefix;
+		}
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------
+		
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, this.namePrefix + " " + 
+					this.createdThreads.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
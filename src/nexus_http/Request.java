@@ -25,6 +25,7 @@ public class Request
 	private MethodType method;
 	private String[] path;
 	private Map<String, String> parameters;
+	private long creationNanoTime;
 	
 	
 	// CONSTRUCTOR	------------------------------
@@ -39,10 +40,47 @@ public class Request
 		// Initializes attributes
 		this.method = 
 				MethodType.parseFromString(request.getRequestLine().getMethod().toString());
+		this.creationNanoTime = System.nanoTime();
 		
 		initializePathAndParameters(request.getRequestLine().getUri(), encoded);
 	}
 	
+	/**
+	 * Creates a new Request from the given HttpRequest whose path has already been split, 
+	 * for example by a {@link RequestRouter}. Only the parameters are parsed from the 
+	 * request.
+	 * @param request The request this request is parsed from
+	 * @param path The parts of the request path, as they were before decoding. The array 
+	 * is not modified.
+	 * @param encoded Is the request encoded (in UTF-8)
+	 */
+	public Request(HttpRequest request, String[] path, boolean encoded)
+	{
+		// Initializes attributes
+		this.method = 
+				MethodType.parseFromString(request.getRequestLine().getMethod().toString());
+		this.creationNanoTime = System.nanoTime();
+		
+		// The array is only copied if some of the parts need to be decoded
+		this.path = path;
+		if (encoded)
+		{
+			for (int i = 0; i < path.length; i++)
+			{
+				String decoded = decodePart(path[i], 0, path[i].length(), true);
+				if (decoded != path[i])
+				{
+					if (this.path == path)
+						this.path = path.clone();
+					this.path[i] = decoded;
+				}
+			}
+		}
+		
+		String uri = request.getRequestLine().getUri();
+		initializeParameters(uri, uri.indexOf('?'), encoded);
+	}
+	
 	/**
 	 * Creates a new request with the given data
 	 * @param method The method that describes this request
@@ -55,6 +93,7 @@ public class Request
 		this.method = method;
 		this.path = path;
 		this.parameters = parameters;
+		this.creationNanoTime = System.nanoTime();
 	}
 	
 	/**
@@ -68,6 +107,7 @@ public class Request
 		this.method = method;
 		this.path = path;
 		this.parameters = new HashMap<>();
+		this.creationNanoTime = System.nanoTime();
 	}
 	
 	/**
@@ -84,11 +124,13 @@ public class Request
 		}
 		this.parameters = new HashMap<>();
 		this.parameters.putAll(another.parameters);
+		this.creationNanoTime = System.nanoTime();
 	}
 	
 	private Request(MethodType method, String uriAndParameters, boolean encoded)
 	{
 		this.method = method;
+		this.creationNanoTime = System.nanoTime();
 		initializePathAndParameters(uriAndParameters, encoded);
 	}
 	
@@ -112,6 +154,15 @@ public class Request
 		return this.method;
 	}
 	
+	/**
+	 * @return The value of {@link System#nanoTime()} at the time the request was created. 
+	 * On the server side, this is the time the request was received.
+	 */
+	public long getCreationNanoTime()
+	{
+		return this.creationNanoTime;
+	}
+	
 	/**
 	 * @return The target path of this request (clone)
 	 */
@@ -120,6 +171,24 @@ public class Request
 		return this.path.clone();
 	}
 	
+	/**
+	 * Returns a single part of the target path without copying the whole path
+	 * @param index The index of the path part
+	 * @return The path part at the given index
+	 */
+	public String getPathPart(int index)
+	{
+		return this.path[index];
+	}
+	
+	/**
+	 * @return How many parts there are in the target path
+	 */
+	public int getPathLength()
+	{
+		return this.path.length;
+	}
+	
 	/**
 	 * @return The parameters given with this request
 	 */
@@ -136,14 +205,7 @@ public class Request
 	 */
 	public String getUriLine()
 	{
-		String uri = new String();
-		for (String pathPart : this.path)
-		{
-			uri += "/" + pathPart;
-		}
-		uri += createParameterString(this.parameters);
-		
-		return uri;
+		return createUriLine(false);
 	}
 	
 	/**
@@ -189,26 +251,7 @@ public class Request
 	 */
 	public HttpRequest toHttpRequest(boolean encode)
 	{
-		String uriLine = getUriLine();
-		
-		if (encode)
-		{
-			try
-			{
-				// Doesn't encode the initial slash at the beginning
-				if (uriLine.startsWith("/"))
-					uriLine = "/" + URLEncoder.encode(uriLine.substring(1), "UTF-8");
-				else
-					uriLine = URLEncoder.encode(uriLine, "UTF-8");
-			}
-			catch (UnsupportedEncodingException e)
-			{
-				System.err.println("Can't encode request " + this);
-				e.printStackTrace();
-			}
-		}
-		
-		return new BasicHttpRequest(this.method.toString(), uriLine);
+		return new BasicHttpRequest(this.method.toString(), createUriLine(encode));
 	}
 	
 	/**
@@ -238,76 +281,181 @@ public class Request
 		return new Request(method, bodyPart, false);
 	}
 	
-	private static String createParameterString(Map<String, String> parameterValues)
+	private String createUriLine(boolean encode)
 	{
-		String parameterString = "";
-		int parameterAmount = parameterValues.size();
-		int parametersWritten = 0;
-		
-		// If there are parameters, they are separated from the uri with '?'
-		if (parameterAmount > 0)
-			parameterString = "?";
+		// Each part is encoded separately so that the separators stay intact
+		StringBuilder uri = new StringBuilder();
+		for (String pathPart : this.path)
+		{
+			uri.append('/');
+			uri.append(encodePart(pathPart, encode));
+		}
 		
-		for (String parameterName : parameterValues.keySet())
+		// If there are parameters, they are separated from the uri with '?' and from each 
+		// other with '&'
+		char separator = '?';
+		for (String parameterName : this.parameters.keySet())
 		{
-			parameterString = parameterString.concat(parameterName + "=" + 
-					parameterValues.get(parameterName));
-			parametersWritten ++;
-			// & is added between the parameters
-			if (parametersWritten != parameterAmount)
-				parameterString = parameterString.concat("&");
+			uri.append(separator);
+			uri.append(encodePart(parameterName, encode));
+			uri.append('=');
+			uri.append(encodePart(this.parameters.get(parameterName), encode));
+			separator = '&';
 		}
 		
-		return parameterString;
+		return uri.toString();
 	}
 	
 	private void initializePathAndParameters(String uriAndParameters, boolean decode)
 	{
-		if (decode)
+		// The uri is split first and each part is decoded separately so that encoded '/', 
+		// '?', '&' and '=' characters are kept as they are
+		int length = uriAndParameters.length();
+		int parametersStartAt = uriAndParameters.indexOf('?');
+		int pathEndsAt = parametersStartAt < 0 ? length : parametersStartAt;
+		int pathStartsAt = 0;
+		if (pathEndsAt > 0 && uriAndParameters.charAt(0) == '/')
+			pathStartsAt = 1;
+		
+		this.path = parsePath(uriAndParameters, pathStartsAt, pathEndsAt, decode);
+		initializeParameters(uriAndParameters, parametersStartAt, decode);
+	}
+	
+	private void initializeParameters(String uriAndParameters, int parametersStartAt, 
+			boolean decode)
+	{
+		this.parameters = new HashMap<>();
+		if (parametersStartAt < 0)
+			return;
+		
+		int length = uriAndParameters.length();
+		int pairStart = parametersStartAt + 1;
+		while (pairStart < length)
 		{
-			try
-			{
-				uriAndParameters = URLDecoder.decode(uriAndParameters, "UTF-8");
-			}
-			catch (UnsupportedEncodingException e)
+			int pairEnd = uriAndParameters.indexOf('&', pairStart);
+			if (pairEnd < 0)
+				pairEnd = length;
+			
+			// Empty pairs are skipped. Parameters without a value get an empty value.
+			if (pairEnd > pairStart)
 			{
-				System.err.println("Can't decode line " + uriAndParameters);
-				e.printStackTrace();
+				int keyEnd = uriAndParameters.indexOf('=', pairStart);
+				if (keyEnd < 0 || keyEnd > pairEnd)
+					keyEnd = pairEnd;
+				
+				String key = decodePart(uriAndParameters, pairStart, keyEnd, decode);
+				String value = "";
+				if (keyEnd < pairEnd)
+					value = decodePart(uriAndParameters, keyEnd + 1, pairEnd, decode);
+				this.parameters.put(key, value);
 			}
+			
+			pairStart = pairEnd + 1;
 		}
+	}
+	
+	/**
+	 * Splits the path part of a uri into parts the same way the requests do, but doesn't 
+	 * decode the parts
+	 * @param uriAndParameters The uri, possibly followed by parameters
+	 * @return The parts of the path
+	 */
+	static String[] splitPath(String uriAndParameters)
+	{
+		int pathEndsAt = uriAndParameters.indexOf('?');
+		if (pathEndsAt < 0)
+			pathEndsAt = uriAndParameters.length();
+		int pathStartsAt = 0;
+		if (pathEndsAt > 0 && uriAndParameters.charAt(0) == '/')
+			pathStartsAt = 1;
 		
-		// Initializes attributes
-		int parametersStartAt = uriAndParameters.indexOf('?');
+		return parsePath(uriAndParameters, pathStartsAt, pathEndsAt, false);
+	}
+	
+	private static String[] parsePath(String uri, int start, int end, boolean decode)
+	{
+		if (start >= end)
+			return new String[] {""};
 		
-		String pathPart, parameterPart;
-		if (parametersStartAt >= 0)
+		// Counts the parts so that the array can be created right away
+		int partAmount = 1;
+		for (int i = start; i < end; i++)
 		{
-			pathPart = uriAndParameters.substring(0, parametersStartAt);
-			parameterPart = uriAndParameters.substring(parametersStartAt + 1);
+			if (uri.charAt(i) == '/')
+				partAmount ++;
 		}
-		else
+		
+		// Empty parts at the end are left out
+		int lastPartEnd = end;
+		while (partAmount > 0 && lastPartEnd > start && uri.charAt(lastPartEnd - 1) == '/')
 		{
-			pathPart = uriAndParameters;
-			parameterPart = new String();
+			lastPartEnd --;
+			partAmount --;
 		}
-		if (pathPart.startsWith("/"))
-			this.path = pathPart.substring(1).split("/");
-		else
-			this.path = pathPart.split("/");
+		if (lastPartEnd == start)
+			return new String[0];
 		
-		this.parameters = new HashMap<>();
-		for (String keyValuePair : parameterPart.split("\\&"))
+		String[] path = new String[partAmount];
+		int partStart = start;
+		for (int i = 0; i < partAmount; i++)
 		{
-			if (keyValuePair.isEmpty())
-				continue;
+			int partEnd = uri.indexOf('/', partStart);
+			if (partEnd < 0 || partEnd > lastPartEnd)
+				partEnd = lastPartEnd;
 			
-			int keyValueSeparatedAt = keyValuePair.indexOf('=');
-			
-			if (keyValueSeparatedAt >= 0)
-				this.parameters.put(keyValuePair.substring(0, keyValueSeparatedAt), 
-						keyValuePair.substring(keyValueSeparatedAt + 1));
-			else
-				this.parameters.put(keyValuePair, new String());
+			path[i] = decodePart(uri, partStart, partEnd, decode);
+			partStart = partEnd + 1;
+		}
+		
+		return path;
+	}
+	
+	private static String decodePart(String s, int start, int end, boolean decode)
+	{
+		String part = s.substring(start, end);
+		if (!decode)
+			return part;
+		
+		// Most parts don't contain any encoded characters
+		boolean encoded = false;
+		for (int i = start; i < end; i++)
+		{
+			char c = s.charAt(i);
+			if (c == '%' || c == '+')
+			{
+				encoded = true;
+				break;
+			}
+		}
+		if (!encoded)
+			return part;
+		
+		try
+		{
+			return URLDecoder.decode(part, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			System.err.println("Can't decode " + part);
+			e.printStackTrace();
+			return part;
+		}
+	}
+	
+	private static String encodePart(String part, boolean encode)
+	{
+		if (!encode)
+			return part;
+		
+		try
+		{
+			return URLEncoder.encode(part, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			System.err.println("Can't encode " + part);
+			e.printStackTrace();
+			return part;
 		}
 	}
 }
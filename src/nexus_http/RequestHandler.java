@@ -14,7 +14,9 @@ public interface RequestHandler extends HttpRequestHandler
 	/**
 	 * The path the handler accepts / handles. Use '*' to indicate that any path is okay. All 
 	 * the paths should start with '/'. Possible paths are, for example: '/*', '/resources/*', 
-	 * or '/timeLine/05'
+	 * or '/timeLine/05'. A path part can also be a parameter, like in '/users/{id}', in 
+	 * which case the value can be read with {@link RequestRouter#getPathParameters(
+	 * org.apache.http.protocol.HttpContext)}.
 	 * @return The path(s) the handler handles
 	 */
 	public String getAcceptedPath();
@@ -0,0 +1,399 @@
+package nexus_http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.HttpRequestHandlerMapper;
+
+/**
+ * RequestRouter finds the handler for each request by walking a tree of path parts, so 
+ * finding the handler takes the same time no matter how many handlers there are. The 
+ * patterns are compiled into the tree once, when the server starts (or when the first 
+ * request is routed after new patterns have been registered). A pattern consists of path 
+ * parts separated with '/'. A part written as "{name}" accepts any single part and makes 
+ * the part available as a path parameter. A "*" at the end of the pattern accepts any 
+ * amount of remaining parts, including none, so "/root/*" also accepts "/root". Literal 
+ * parts are preferred over parameters and parameters over "*". Patterns that use '*' in 
+ * any other way (like "/root*" or "*.html") are matched one by one, as in 
+ * {@link org.apache.http.protocol.UriHttpRequestHandlerMapper}, but only when the tree has 
+ * no handler for the request.<br> 
+ * The router splits the request path only once. The handlers can read the split path and 
+ * the path parameters from the context with {@link #getPath(HttpContext)} and 
+ * {@link #getPathParameters(HttpContext)}.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class RequestRouter implements HttpRequestHandlerMapper
+{
+	// ATTRIBUTES	--------------------------------
+	
+	/**
+	 * The context attribute that holds the parts of the request path, as they were before 
+	 * decoding
+	 */
+	public static final String PATH_ATTRIBUTE = "nexus.path";
+	/**
+	 * The context attribute that holds the path parameters of the request
+	 */
+	public static final String PATH_PARAMETERS_ATTRIBUTE = "nexus.pathParameters";
+	
+	private Map<String, HttpRequestHandler> registeredHandlers;
+	private volatile CompiledRoutes compiled;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new router without any handlers
+	 */
+	public RequestRouter()
+	{
+		this.registeredHandlers = new LinkedHashMap<>();
+		this.compiled = null;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public HttpRequestHandler lookup(HttpRequest request)
+	{
+		CompiledRoutes routes = this.compiled;
+		if (routes == null)
+			routes = compile();
+		
+		String uri = request.getRequestLine().getUri();
+		String[] path = Request.splitPath(uri);
+		
+		Route route = findRoute(routes.root, path, 0);
+		if (route == null)
+			route = findFallbackRoute(routes.fallbackRoutes, uri);
+		if (route == null)
+			return null;
+		
+		return new RoutedHandler(route, path);
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Registers a handler for the given path pattern. If a handler was already registered 
+	 * for the pattern, it is replaced.
+	 * @param pattern The path pattern, for example "/root/*" or "/users/{id}/friends"
+	 * @param handler The handler that handles the requests matching the pattern
+	 */
+	public synchronized void register(String pattern, HttpRequestHandler handler)
+	{
+		if (pattern == null || handler == null)
+			throw new IllegalArgumentException("The pattern and the handler must be provided");
+		
+		this.registeredHandlers.put(pattern, handler);
+		// The tree is compiled again when it is next needed
+		this.compiled = null;
+	}
+	
+	/**
+	 * Removes the handler registered for the given path pattern
+	 * @param pattern The path pattern the handler was registered with
+	 */
+	public synchronized void unregister(String pattern)
+	{
+		if (this.registeredHandlers.remove(pattern) != null)
+			this.compiled = null;
+	}
+	
+	/**
+	 * Compiles the registered patterns into a tree. This is done automatically when 
+	 * needed, but the servers do it when they start so that the first request doesn't 
+	 * have to.
+	 */
+	public void prepare()
+	{
+		if (this.compiled == null)
+			compile();
+	}
+	
+	/**
+	 * Reads the split request path stored into the context by a router
+	 * @param context The context of the request (may be null)
+	 * @return The parts of the request path, not decoded. Null if the request wasn't routed 
+	 * by a router.
+	 */
+	public static String[] getPath(HttpContext context)
+	{
+		if (context == null)
+			return null;
+		
+		Object path = context.getAttribute(PATH_ATTRIBUTE);
+		if (path instanceof String[])
+			return (String[]) path;
+		return null;
+	}
+	
+	/**
+	 * Reads the path parameters stored into the context by a router
+	 * @param context The context of the request (may be null)
+	 * @return The path parameters of the request, not decoded. Empty if the pattern didn't 
+	 * contain parameters or the request wasn't routed by a router.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, String> getPathParameters(HttpContext context)
+	{
+		if (context == null)
+			return Collections.emptyMap();
+		
+		Object parameters = context.getAttribute(PATH_PARAMETERS_ATTRIBUTE);
+		if (parameters instanceof Map)
+			return (Map<String, String>) parameters;
+		return Collections.emptyMap();
+	}
+	
+	private synchronized CompiledRoutes compile()
+	{
+		// Another thread may have compiled the routes already
+		if (this.compiled != null)
+			return this.compiled;
+		
+		Node root = new Node();
+		List<Route> fallbackRoutes = new ArrayList<>();
+		for (Map.Entry<String, HttpRequestHandler> entry : this.registeredHandlers.entrySet())
+		{
+			String pattern = entry.getKey();
+			String[] parts = Request.splitPath(pattern);
+			
+			if (!addToTree(root, pattern, parts, entry.getValue()))
+				fallbackRoutes.add(new Route(pattern, entry.getValue(), null));
+		}
+		
+		CompiledRoutes routes = new CompiledRoutes(root, fallbackRoutes);
+		this.compiled = routes;
+		return routes;
+	}
+	
+	private static boolean addToTree(Node root, String pattern, String[] parts, 
+			HttpRequestHandler handler)
+	{
+		// Checks that the pattern can be represented with the tree
+		String[] parameterNames = new String[parts.length];
+		boolean hasParameters = false;
+		for (int i = 0; i < parts.length; i++)
+		{
+			String part = parts[i];
+			if (part.equals("*"))
+			{
+				if (i != parts.length - 1)
+					return false;
+			}
+			else if (part.indexOf('*') >= 0)
+				return false;
+			else if (part.length() > 2 && part.charAt(0) == '{' && 
+					part.charAt(part.length() - 1) == '}')
+			{
+				parameterNames[i] = part.substring(1, part.length() - 1);
+				hasParameters = true;
+			}
+		}
+		
+		Route route = new Route(pattern, handler, hasParameters ? parameterNames : null);
+		Node node = root;
+		for (int i = 0; i < parts.length; i++)
+		{
+			if (parts[i].equals("*"))
+			{
+				node.wildcardRoute = route;
+				return true;
+			}
+			else if (parameterNames[i] != null)
+			{
+				if (node.parameterChild == null)
+					node.parameterChild = new Node();
+				node = node.parameterChild;
+			}
+			else
+			{
+				Node child = node.literalChildren.get(parts[i]);
+				if (child == null)
+				{
+					child = new Node();
+					node.literalChildren.put(parts[i], child);
+				}
+				node = child;
+			}
+		}
+		
+		node.exactRoute = route;
+		return true;
+	}
+	
+	private static Route findRoute(Node node, String[] path, int index)
+	{
+		if (index == path.length)
+		{
+			if (node.exactRoute != null)
+				return node.exactRoute;
+			return node.wildcardRoute;
+		}
+		
+		// Literal parts are tried first, then parameters and finally the wildcard
+		Node literalChild = node.literalChildren.get(path[index]);
+		if (literalChild != null)
+		{
+			Route route = findRoute(literalChild, path, index + 1);
+			if (route != null)
+				return route;
+		}
+		if (node.parameterChild != null)
+		{
+			Route route = findRoute(node.parameterChild, path, index + 1);
+			if (route != null)
+				return route;
+		}
+		
+		return node.wildcardRoute;
+	}
+	
+	private static Route findFallbackRoute(List<Route> fallbackRoutes, String uri)
+	{
+		if (fallbackRoutes.isEmpty())
+			return null;
+		
+		int parametersStartAt = uri.indexOf('?');
+		if (parametersStartAt >= 0)
+			uri = uri.substring(0, parametersStartAt);
+		
+		// The longest matching pattern is used
+		Route best = null;
+		for (Route route : fallbackRoutes)
+		{
+			if (matchesPattern(route.pattern, uri) && (best == null || 
+					route.pattern.length() > best.pattern.length()))
+				best = route;
+		}
+		
+		return best;
+	}
+	
+	private static boolean matchesPattern(String pattern, String path)
+	{
+		if (pattern.equals("*"))
+			return true;
+		if (pattern.endsWith("*") && path.startsWith(pattern.substring(0, 
+				pattern.length() - 1)))
+			return true;
+		if (pattern.startsWith("*") && path.endsWith(pattern.substring(1)))
+			return true;
+		return pattern.equals(path);
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class Node
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final Map<String, Node> literalChildren = new HashMap<>();
+		private Node parameterChild = null;
+		private Route exactRoute = null;
+		private Route wildcardRoute = null;
+	}
+	
+	private static class Route
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final String pattern;
+		private final HttpRequestHandler handler;
+		// The names of the parameters at each index. Null if there are no parameters.
+		private final String[] parameterNames;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public Route(String pattern, HttpRequestHandler handler, String[] parameterNames)
+		{
+			this.pattern = pattern;
+			this.handler = handler;
+			this.parameterNames = parameterNames;
+		}
+	}
+	
+	private static class CompiledRoutes
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final Node root;
+		private final List<Route> fallbackRoutes;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public CompiledRoutes(Node root, List<Route> fallbackRoutes)
+		{
+			this.root = root;
+			this.fallbackRoutes = fallbackRoutes;
+		}
+	}
+	
+	private static class RoutedHandler implements HttpRequestHandler
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final Route route;
+		private final String[] path;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public RoutedHandler(Route route, String[] path)
+		{
+			this.route = route;
+			this.path = path;
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+				throws HttpException, IOException
+		{
+			// The same context is used for all the requests in a connection, so the values
+			// are always replaced
+			context.setAttribute(PATH_ATTRIBUTE, this.path);
+			context.setAttribute(PATH_PARAMETERS_ATTRIBUTE, createPathParameters());
+			
+			this.route.handler.handle(request, response, context);
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		private Map<String, String> createPathParameters()
+		{
+			String[] names = this.route.parameterNames;
+			if (names == null)
+				return Collections.emptyMap();
+			
+			Map<String, String> parameters = new HashMap<>();
+			for (int i = 0; i < names.length && i < this.path.length; i++)
+			{
+				if (names[i] != null)
+					parameters.put(names[i], this.path[i]);
+			}
+			return parameters;
+		}
+	}
+}
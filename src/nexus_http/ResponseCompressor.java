@@ -0,0 +1,331 @@
+package nexus_http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * ResponseCompressor compresses response bodies with gzip or deflate, depending on which 
+ * one the client accepts (Accept-Encoding). The body is compressed while it is being 
+ * written, so the whole compressed body never has to be kept in memory. Only textual 
+ * content (like xml and json) is compressed, and only when it is large enough for the 
+ * compression to be worth it. The deflaters are pooled so that their native buffers don't 
+ * have to be allocated for each response. The compressor can be used by multiple threads at 
+ * once.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class ResponseCompressor
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 
+			0, 0, 0, (byte) 0xff};
+	
+	private final int minimumSize, level;
+	private final BlockingQueue<Deflater> gzipDeflaters, zlibDeflaters;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new compressor
+	 * @param minimumSize How large the response body must be before it is compressed, in 
+	 * bytes. Bodies of unknown length are always compressed.
+	 * @param level The compression level, from 1 (fastest) to 9 (smallest). 
+	 * {@link Deflater#DEFAULT_COMPRESSION} may also be used.
+	 * @param poolSize How many unused deflaters are kept for later use
+	 */
+	public ResponseCompressor(int minimumSize, int level, int poolSize)
+	{
+		if ((level < 1 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		
+		this.minimumSize = minimumSize;
+		this.level = level;
+		this.gzipDeflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+		this.zlibDeflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+	}
+	
+	/**
+	 * Creates a new compressor that compresses bodies of at least 1 kB with the default 
+	 * compression level and keeps up to 32 deflaters of each kind
+	 */
+	public ResponseCompressor()
+	{
+		this(1024, Deflater.DEFAULT_COMPRESSION, 32);
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Compresses the body of the response, if the client accepts compressed responses and 
+	 * the body is worth compressing. This should be called once the response is otherwise 
+	 * complete.
+	 * @param request The request the response is for
+	 * @param response The response that may be compressed
+	 */
+	public void compress(HttpRequest request, HttpResponse response)
+	{
+		HttpEntity entity = response.getEntity();
+		if (entity == null || entity.getContentEncoding() != null || 
+				response.containsHeader(HTTP.CONTENT_ENCODING) || !isCompressible(entity))
+			return;
+		
+		// Partial responses and responses without a body are left as they are
+		int status = response.getStatusLine().getStatusCode();
+		if (status == HttpStatus.SC_PARTIAL_CONTENT || status == HttpStatus.SC_NO_CONTENT || 
+				status == HttpStatus.SC_NOT_MODIFIED)
+			return;
+		
+		long length = entity.getContentLength();
+		if (length >= 0 && length < this.minimumSize)
+			return;
+		
+		// The response depends on the Accept-Encoding header from now on
+		response.addHeader("Vary", "Accept-Encoding");
+		
+		String encoding = selectEncoding(request.getHeaders("Accept-Encoding"));
+		if (encoding == null)
+			return;
+		
+		response.setEntity(new CompressedEntity(entity, encoding.equals("gzip")));
+		response.removeHeaders(HTTP.CONTENT_LEN);
+		response.setHeader(HTTP.CONTENT_ENCODING, encoding);
+	}
+	
+	private Deflater borrowDeflater(boolean gzip)
+	{
+		Deflater deflater = (gzip ? this.gzipDeflaters : this.zlibDeflaters).poll();
+		if (deflater == null)
+			deflater = new Deflater(this.level, gzip);
+		return deflater;
+	}
+	
+	private void releaseDeflater(Deflater deflater, boolean gzip)
+	{
+		// If the pool is already full, the native resources are released right away
+		deflater.reset();
+		if (!(gzip ? this.gzipDeflaters : this.zlibDeflaters).offer(deflater))
+			deflater.end();
+	}
+	
+	private static boolean isCompressible(HttpEntity entity)
+	{
+		Header contentTypeHeader = entity.getContentType();
+		if (contentTypeHeader == null)
+			return true;
+		
+		String contentType = contentTypeHeader.getValue().toLowerCase();
+		int parametersStart = contentType.indexOf(';');
+		if (parametersStart >= 0)
+			contentType = contentType.substring(0, parametersStart);
+		contentType = contentType.trim();
+		
+		return contentType.startsWith("text/") || contentType.endsWith("/xml") || 
+				contentType.endsWith("+xml") || contentType.endsWith("/json") || 
+				contentType.endsWith("+json") || contentType.equals("application/javascript");
+	}
+	
+	/**
+	 * Selects the encoding the response is compressed with
+	 * @param acceptEncodingHeaders The Accept-Encoding headers of the request
+	 * @return "gzip", "deflate" or null if the client doesn't accept either
+	 */
+	private static String selectEncoding(Header[] acceptEncodingHeaders)
+	{
+		double gzipQuality = -1, deflateQuality = -1, anyQuality = -1;
+		for (Header header : acceptEncodingHeaders)
+		{
+			for (String coding : header.getValue().split(","))
+			{
+				String name = coding;
+				double quality = 1;
+				int parametersStart = coding.indexOf(';');
+				if (parametersStart >= 0)
+				{
+					name = coding.substring(0, parametersStart);
+					quality = parseQuality(coding.substring(parametersStart + 1));
+				}
+				name = name.trim().toLowerCase();
+				
+				if (name.equals("gzip") || name.equals("x-gzip"))
+					gzipQuality = quality;
+				else if (name.equals("deflate"))
+					deflateQuality = quality;
+				else if (name.equals("*"))
+					anyQuality = quality;
+			}
+		}
+		
+		// The codings that are not mentioned get the quality of "*"
+		if (gzipQuality < 0)
+			gzipQuality = anyQuality;
+		if (deflateQuality < 0)
+			deflateQuality = anyQuality;
+		
+		// Gzip is preferred when the qualities are equal
+		if (gzipQuality > 0 && gzipQuality >= deflateQuality)
+			return "gzip";
+		if (deflateQuality > 0)
+			return "deflate";
+		return null;
+	}
+	
+	private static double parseQuality(String parameters)
+	{
+		for (String parameter : parameters.split(";"))
+		{
+			parameter = parameter.trim();
+			if (parameter.startsWith("q="))
+			{
+				try
+				{
+					return Double.parseDouble(parameter.substring(2).trim());
+				}
+				catch (NumberFormatException e)
+				{
+					return 0;
+				}
+			}
+		}
+		
+		return 1;
+	}
+	
+	private static void writeIntLittleEndian(OutputStream out, long value) throws IOException
+	{
+		out.write((int) value & 0xff);
+		out.write((int) (value >> 8) & 0xff);
+		out.write((int) (value >> 16) & 0xff);
+		out.write((int) (value >> 24) & 0xff);
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private class CompressedEntity extends HttpEntityWrapper
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final boolean gzip;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public CompressedEntity(HttpEntity wrappedEntity, boolean gzip)
+		{
+			super(wrappedEntity);
+			this.gzip = gzip;
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public long getContentLength()
+		{
+			return -1;
+		}
+		
+		@Override
+		public Header getContentEncoding()
+		{
+			return new BasicHeader(HTTP.CONTENT_ENCODING, this.gzip ? "gzip" : "deflate");
+		}
+		
+		@Override
+		public boolean isChunked()
+		{
+			return true;
+		}
+		
+		@Override
+		public InputStream getContent() throws IOException
+		{
+			// The content is compressed in memory since it is rarely read this way
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			writeTo(content);
+			return new ByteArrayInputStream(content.toByteArray());
+		}
+		
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException
+		{
+			Deflater deflater = borrowDeflater(this.gzip);
+			try
+			{
+				if (this.gzip)
+					outstream.write(GZIP_HEADER);
+				
+				// The wrapped entity may close the stream it writes to, but the actual
+				// output stream must stay open for the rest of the body
+				DeflaterOutputStream compressed = new DeflaterOutputStream( 
+						new NonClosingOutputStream(outstream), deflater, BUFFER_SIZE);
+				CRC32 checksum = new CRC32();
+				OutputStream target = compressed;
+				if (this.gzip)
+					target = new CheckedOutputStream(compressed, checksum);
+				
+				this.wrappedEntity.writeTo(target);
+				compressed.finish();
+				
+				if (this.gzip)
+				{
+					writeIntLittleEndian(outstream, checksum.getValue());
+					writeIntLittleEndian(outstream, deflater.getBytesRead());
+				}
+			}
+			finally
+			{
+				releaseDeflater(deflater, this.gzip);
+			}
+		}
+	}
+	
+	private static class NonClosingOutputStream extends FilterOutputStream
+	{
+		// CONSTRUCTOR	----------------------------
+		
+		public NonClosingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			this.out.write(b, off, len);
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			flush();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package nexus_http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * ResponseDecompressor decompresses the gzip and deflate encoded response bodies received 
+ * by a client, so that the rest of the client doesn't have to know whether the response 
+ * was compressed or not. The body is decompressed while it is being read. Once the body has 
+ * been replaced, the Content-Encoding and Content-Length headers of the response are 
+ * removed since they no longer describe the body.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class ResponseDecompressor implements HttpResponseInterceptor
+{
+	// ATTRIBUTES	--------------------------------
+	
+	/**
+	 * The value of the Accept-Encoding header that tells which encodings can be decompressed
+	 */
+	public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void process(HttpResponse response, HttpContext context) throws HttpException, 
+			IOException
+	{
+		decompress(response);
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Replaces the body of the response with a decompressing one, if the body is gzip or 
+	 * deflate encoded
+	 * @param response The response that may have a compressed body
+	 */
+	public static void decompress(HttpResponse response)
+	{
+		HttpEntity entity = response.getEntity();
+		Header encodingHeader = response.getFirstHeader(HTTP.CONTENT_ENCODING);
+		if (entity == null || encodingHeader == null || entity.getContentLength() == 0)
+			return;
+		
+		String encoding = encodingHeader.getValue().trim().toLowerCase();
+		boolean gzip;
+		if (encoding.equals("gzip") || encoding.equals("x-gzip"))
+			gzip = true;
+		else if (encoding.equals("deflate"))
+			gzip = false;
+		else
+			return;
+		
+		response.setEntity(new DecompressingEntity(entity, gzip));
+		response.removeHeaders(HTTP.CONTENT_ENCODING);
+		response.removeHeaders(HTTP.CONTENT_LEN);
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class DecompressingEntity extends HttpEntityWrapper
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final boolean gzip;
+		private InputStream content;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public DecompressingEntity(HttpEntity wrappedEntity, boolean gzip)
+		{
+			super(wrappedEntity);
+			this.gzip = gzip;
+			this.content = null;
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public InputStream getContent() throws IOException
+		{
+			// Streamed content can only be read once, so the same stream is returned each
+			// time. Repeatable content is decompressed again.
+			if (this.wrappedEntity.isStreaming())
+			{
+				if (this.content == null)
+					this.content = createStream();
+				return this.content;
+			}
+			
+			return createStream();
+		}
+		
+		@Override
+		public long getContentLength()
+		{
+			return -1;
+		}
+		
+		@Override
+		public Header getContentEncoding()
+		{
+			return null;
+		}
+		
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException
+		{
+			InputStream input = getContent();
+			try
+			{
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = input.read(buffer)) > 0)
+				{
+					outstream.write(buffer, 0, read);
+				}
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		private InputStream createStream() throws IOException
+		{
+			if (this.gzip)
+				return new GZIPInputStream(this.wrappedEntity.getContent());
+			return new InflaterInputStream(this.wrappedEntity.getContent());
+		}
+	}
+}
@@ -2,14 +2,21 @@ package nexus_http;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
+import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
 
 /**
  * Response represents the http response sent by the server. It's a simplified version of 
  * Http response and can be used along with it. The replicate is mostly meant for handling 
- * the requests on client side once the connection has been closed.
+ * the requests on client side once the connection has been closed. The status, the 
+ * headers and the content are all copied when the replicate is created, so the replicate 
+ * doesn't change even if the original response does.
  * 
  * @author Mikko Hilpinen
  * @since 27.1.2015
@@ -19,6 +26,9 @@ public class ResponseReplicate
 	// ATTRIBUTES	--------------------------
 	
 	private int code;
+	private Header[] headers;
+	private byte[] contentBytes;
+	private Charset charset;
 	private String content;
 	
 	
@@ -29,23 +39,32 @@ public class ResponseReplicate
 	 * @param response The response which is replicated
 	 */
 	public ResponseReplicate(HttpResponse response)
+	{
+		this(response, true);
+	}
+	
+	/**
+	 * Creates a new response from the given response
+	 * @param response The response which is replicated
+	 * @param includeContent Should the content of the response be copied. If false, the 
+	 * replicate will have empty content. This may be used when writing the content would 
+	 * be too costly.
+	 */
+	public ResponseReplicate(HttpResponse response, boolean includeContent)
 	{
 		this.code = response.getStatusLine().getStatusCode();
-		if (response.getEntity() != null)
+		this.headers = response.getAllHeaders();
+		this.content = null;
+		this.charset = Consts.UTF_8;
+		
+		HttpEntity entity = response.getEntity();
+		if (entity == null || !includeContent)
+			this.contentBytes = new byte[0];
+		else
 		{
-			try
-			{
-				ByteArrayOutputStream content = new ByteArrayOutputStream();
-				response.getEntity().writeTo(content);
-				this.content = content.toString();
-			}
-			catch (IOException e)
-			{
-				this.content = "Couldn't read the content";
-			}
+			this.charset = getCharset(entity);
+			readContent(entity);
 		}
-		else
-			this.content = "";
 	}
 	
 	
@@ -54,20 +73,60 @@ public class ResponseReplicate
 	@Override
 	public String toString()
 	{
-		return this.code + ": " + this.content;
+		return this.code + ": " + getContent();
 	}
 	
 	
 	// GETTERS & SETTERS	-------------------
 	
 	/**
+	 * Returns the content of the response. The content is decoded using the charset of 
+	 * the response or UTF-8 if the response didn't specify one.
 	 * @return The content of the response
 	 */
-	public String getContent()
+	public synchronized String getContent()
 	{
+		if (this.content == null)
+			this.content = new String(this.contentBytes, this.charset);
+		
 		return this.content;
 	}
 	
+	/**
+	 * Returns the content of the response as it was sent. Binary content (like smile or 
+	 * cbor) should be read this way, since it can't be represented as a string.
+	 * @return The content of the response. The array shouldn't be modified.
+	 */
+	public byte[] getContentBytes()
+	{
+		return this.contentBytes;
+	}
+	
+	/**
+	 * @return The headers of the response
+	 */
+	public Header[] getHeaders()
+	{
+		return this.headers.clone();
+	}
+	
+	/**
+	 * Finds the value of a header
+	 * @param headerName The name of the header (case-insensitive)
+	 * @return The value of the first header with the given name or null if the response 
+	 * didn't have such a header
+	 */
+	public String getHeaderValue(String headerName)
+	{
+		for (Header header : this.headers)
+		{
+			if (header.getName().equalsIgnoreCase(headerName))
+				return header.getValue();
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * @return The status of the response
 	 */
@@ -86,4 +145,42 @@ public class ResponseReplicate
 	{
 		return getStatusCode() == HttpStatus.SC_OK;
 	}
+	
+	private void readContent(HttpEntity entity)
+	{
+		// Shared arrays can't change, so they don't need to be copied
+		if (entity instanceof SharedByteArrayEntity)
+		{
+			this.contentBytes = ((SharedByteArrayEntity) entity).getBytes();
+			return;
+		}
+		
+		try
+		{
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			entity.writeTo(content);
+			this.contentBytes = content.toByteArray();
+		}
+		catch (IOException e)
+		{
+			this.contentBytes = new byte[0];
+			this.content = "Couldn't read the content";
+		}
+	}
+	
+	private static Charset getCharset(HttpEntity entity)
+	{
+		try
+		{
+			ContentType type = ContentType.get(entity);
+			if (type != null && type.getCharset() != null)
+				return type.getCharset();
+		}
+		catch (RuntimeException e)
+		{
+			// Malformed or unsupported charsets are replaced with the default
+		}
+		
+		return Consts.UTF_8;
+	}
 }
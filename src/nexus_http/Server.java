@@ -1,19 +1,41 @@
 package nexus_http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLServerSocketFactory;
 
 import org.apache.http.ConnectionClosedException;
 import org.apache.http.HttpConnectionFactory;
 import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpServerConnection;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.impl.DefaultBHttpServerConnection;
 import org.apache.http.impl.DefaultBHttpServerConnectionFactory;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpProcessorBuilder;
@@ -22,10 +44,20 @@ import org.apache.http.protocol.ResponseConnControl;
 import org.apache.http.protocol.ResponseContent;
 import org.apache.http.protocol.ResponseDate;
 import org.apache.http.protocol.ResponseServer;
-import org.apache.http.protocol.UriHttpRequestHandlerMapper;
+
+import nexus_event.HttpStatisticsRecorder;
 
 /**
- * Server hosts a server at a certain port and gives requests to different handlers
+ * Server hosts a server at a certain port and gives requests to different handlers. By 
+ * default each connection is handled in its own thread, but the server can also be 
+ * limited to a bounded pool of worker threads, in which case the connections that don't 
+ * fit into the pool are answered with 503 (service unavailable). On Java 21 and later, the 
+ * connections can also be handled in virtual threads, which makes idle keep-alive 
+ * connections very cheap. The connections may be accepted by multiple acceptor threads that 
+ * share the same server socket. The accept calls themselves are still serialized by the 
+ * socket, so this doesn't spread the load like separate sockets (SO_REUSEPORT) would. It 
+ * only lets one thread accept the next connection while another is still setting up the 
+ * previous one.
  * 
  * @author Mikko Hilpinen
  * @since 26.12.2014
@@ -34,9 +66,30 @@ public class Server
 {
 	// ATTRIBUTES	--------------------------------
 	
-	private Thread lastRequestThread;
-	private int port;
-	private UriHttpRequestHandlerMapper mapper;
+	/**
+	 * The context attribute that holds the socket channel of the connection. Handlers may 
+	 * use the channel for writing large response bodies directly to the socket, once the 
+	 * response head has been flushed.
+	 */
+	public static final String SOCKET_CHANNEL_ATTRIBUTE = "nexus.socketChannel";
+	
+	private RequestListenerThread[] listenerThreads;
+	private ServerSocket serverSocket;
+	private int port, corePoolSize, maxPoolSize, queueCapacity, acceptorAmount, 
+			acceptBacklog, receiveBufferSize;
+	private RequestRouter router;
+	private ThreadPoolExecutor workerPool;
+	private boolean useVirtualThreads, tcpNoDelay;
+	private ConnectionCounter connectionCounter;
+	
+	private static final int POOLED_KEEP_ALIVE_MILLIS = 15000;
+	private static final int REJECT_LINGER_MILLIS = 500;
+	private static final int REJECT_IDLE_MILLIS = 50;
+	private static final int REJECTOR_THREADS = 16;
+	private static final int REJECT_QUEUE_CAPACITY = 64;
+	private static final int MAX_DRAINED_BYTES = 64 * 1024;
+	private static final String CONNECTION_HANDLER_ATTRIBUTE = "nexus.connectionHandler";
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
 	
 	
 	// CONSTRUCTOR	--------------------------------
@@ -48,21 +101,193 @@ public class Server
 	public Server(int port)
 	{
 		// Initializes attributes
-		this.lastRequestThread = null;
+		this.listenerThreads = null;
+		this.serverSocket = null;
 		this.port = port;
-		this.mapper = new UriHttpRequestHandlerMapper();
+		this.router = new RequestRouter();
+		this.corePoolSize = 0;
+		this.maxPoolSize = 0;
+		this.queueCapacity = 0;
+		this.workerPool = null;
+		this.useVirtualThreads = false;
+		this.connectionCounter = new ConnectionCounter();
+		this.acceptorAmount = 1;
+		this.acceptBacklog = 50;
+		this.receiveBufferSize = 0;
+		this.tcpNoDelay = false;
+	}
+	
+	/**
+	 * Creates a new server that handles each connection in its own thread
+	 * @param port The port number the server responds to
+	 * @param useVirtualThreads Should the connections be handled in virtual threads instead 
+	 * of platform threads. Virtual threads are only available on Java 21 and later. On 
+	 * older platforms, daemon threads are used instead.
+	 * @see #virtualThreadsAreSupported()
+	 */
+	public Server(int port, boolean useVirtualThreads)
+	{
+		this(port);
+		
+		this.useVirtualThreads = useVirtualThreads;
+	}
+	
+	/**
+	 * Creates a new server that handles the connections using a bounded pool of worker 
+	 * threads. If all the workers are busy and the queue is full, new connections are 
+	 * answered with 503 (service unavailable) and closed. Idle keep-alive connections are 
+	 * closed after a while so that they don't reserve the workers indefinitely.
+	 * @param port The port number the server responds to
+	 * @param corePoolSize How many worker threads are kept alive even when idle
+	 * @param maxPoolSize The maximum amount of worker threads handling connections at once
+	 * @param queueCapacity How many accepted connections may wait for a free worker 
+	 * (0 means that the connections are handed directly to the workers)
+	 */
+	public Server(int port, int corePoolSize, int maxPoolSize, int queueCapacity)
+	{
+		this(port);
+		
+		if (maxPoolSize <= 0 || corePoolSize < 0 || corePoolSize > maxPoolSize || 
+				queueCapacity < 0)
+			throw new IllegalArgumentException("Invalid worker pool size: core " + 
+					corePoolSize + ", max " + maxPoolSize + ", queue " + queueCapacity);
+		
+		this.corePoolSize = corePoolSize;
+		this.maxPoolSize = maxPoolSize;
+		this.queueCapacity = queueCapacity;
 	}
 
 	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How many client connections are currently open
+	 */
+	public int getOpenConnectionAmount()
+	{
+		return this.connectionCounter.open.get();
+	}
+	
+	/**
+	 * @return How many of the open connections are currently handling a request, from 
+	 * reading the request to sending the response. A connection is counted even while its 
+	 * thread is blocked on socket or disk I/O.
+	 */
+	public int getActiveConnectionAmount()
+	{
+		return this.connectionCounter.active.get();
+	}
+	
+	/**
+	 * @return How many of the open connections are waiting for the next request from the 
+	 * client
+	 */
+	public int getIdleConnectionAmount()
+	{
+		return Math.max(0, getOpenConnectionAmount() - getActiveConnectionAmount());
+	}
+	
+	/**
+	 * Changes the amount of threads that accept new connections. The threads share the 
+	 * same socket and only one of them accepts at a time, so additional threads help only 
+	 * when setting up the accepted connections takes a noticeable time. The change takes 
+	 * effect the next time the server is started.
+	 * @param acceptorAmount How many threads accept connections from the server socket
+	 */
+	public void setAcceptorAmount(int acceptorAmount)
+	{
+		if (acceptorAmount <= 0)
+			throw new IllegalArgumentException("There must be at least one acceptor");
+		
+		this.acceptorAmount = acceptorAmount;
+	}
+	
+	/**
+	 * Changes the maximum length of the queue of incoming connections that haven't been 
+	 * accepted yet. The change takes effect the next time the server is started.
+	 * @param backlog The requested maximum length of the accept queue. 0 or less means 
+	 * that the platform default is used.
+	 */
+	public void setAcceptBacklog(int backlog)
+	{
+		this.acceptBacklog = backlog;
+	}
+	
+	/**
+	 * Changes the size of the receive buffer proposed for the accepted connections. The 
+	 * change takes effect the next time the server is started.
+	 * @param receiveBufferSize The size of the receive buffer in bytes. 0 or less means 
+	 * that the platform default is used.
+	 */
+	public void setReceiveBufferSize(int receiveBufferSize)
+	{
+		this.receiveBufferSize = receiveBufferSize;
+	}
+	
+	/**
+	 * Changes whether Nagle's algorithm is disabled for the accepted connections. The 
+	 * change takes effect the next time the server is started.
+	 * @param tcpNoDelay Should small responses be sent right away (TCP_NODELAY)
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay)
+	{
+		this.tcpNoDelay = tcpNoDelay;
+	}
+	
+	/**
+	 * @return How many connections each acceptor thread has accepted since the server was 
+	 * started. Empty if the server isn't running.
+	 */
+	public long[] getAcceptedConnectionAmounts()
+	{
+		RequestListenerThread[] listeners = this.listenerThreads;
+		if (listeners == null)
+			return new long[0];
+		
+		long[] amounts = new long[listeners.length];
+		for (int i = 0; i < listeners.length; i++)
+		{
+			amounts[i] = listeners[i].acceptedConnections.get();
+		}
+		return amounts;
+	}
+	
+	/**
+	 * @return How many connections each acceptor thread has accepted per second on average 
+	 * since the server was started. Empty if the server isn't running.
+	 */
+	public double[] getAcceptRates()
+	{
+		RequestListenerThread[] listeners = this.listenerThreads;
+		if (listeners == null)
+			return new double[0];
+		
+		double[] rates = new double[listeners.length];
+		for (int i = 0; i < listeners.length; i++)
+		{
+			rates[i] = listeners[i].getAcceptRate();
+		}
+		return rates;
+	}
+	
+	
 	// OTHER METHODS	----------------------------
 	
+	/**
+	 * @return Can virtual threads be used on this platform (Java 21 or later)
+	 */
+	public static boolean virtualThreadsAreSupported()
+	{
+		return VIRTUAL_THREAD_FACTORY != null;
+	}
+	
 	/**
 	 * Adds a new handler to the request handlers informed about client requests
 	 * @param handler The handler that will handle requests in this server
 	 */
 	public void addRequestHandler(RequestHandler handler)
 	{
-		this.mapper.register(handler.getAcceptedPath(), handler);
+		this.router.register(handler.getAcceptedPath(), handler);
 	}
 	
 	/**
@@ -74,7 +299,19 @@ public class Server
 	 */
 	public void addRequestHandler(RequestHandler handler, String acceptedPath)
 	{
-		this.mapper.register(acceptedPath, handler);
+		this.router.register(acceptedPath, handler);
+	}
+	
+	/**
+	 * Adds an endpoint that responds to GET requests with the request statistics collected 
+	 * by the given recorder. The recorder should listen to the events of the request 
+	 * handlers used in this server.
+	 * @param recorder The recorder that collects the statistics
+	 * @param path The path the statistics are requested from, starting with '/'
+	 */
+	public void addStatisticsEndpoint(HttpStatisticsRecorder recorder, String path)
+	{
+		addRequestHandler(new StatisticsRequestHandler(recorder, path));
 	}
 	
 	/**
@@ -83,31 +320,68 @@ public class Server
 	public void start()
 	{
 		// If the server is already active, doesn't do anything
-		if (this.lastRequestThread != null)
+		if (this.listenerThreads != null)
 			return;
 		
 		// Sets up the http protocol processor
 		HttpProcessor processor = HttpProcessorBuilder.create()
+				.add(new ConnectionActivator())
 				.add(new ResponseDate())
                 .add(new ResponseServer("Test/1.1"))
                 .add(new ResponseContent())
                 .add(new ResponseConnControl()).build();
 		
+		// The handler paths are compiled before any requests arrive
+		this.router.prepare();
+		
 		// Sets up the HTTP service
-        HttpService service = new HttpService(processor, this.mapper);
+        HttpService service = new HttpService(processor, this.router);
+        
+        // Sets up the worker pool, if one is used
+        if (this.maxPoolSize > 0)
+        	this.workerPool = createWorkerPool(this.corePoolSize, this.maxPoolSize, 
+        			this.queueCapacity);
+        
+        // Without a pool, each connection gets its own (possibly virtual) thread
+        ThreadFactory connectionThreadFactory = new WorkerThreadFactory();
+        if (this.useVirtualThreads)
+        {
+        	if (virtualThreadsAreSupported())
+        		connectionThreadFactory = VIRTUAL_THREAD_FACTORY;
+        	else
+        		System.err.println(
+        				"Virtual threads are not supported, using platform threads instead");
+        }
         
-        // Starts listening to the reguests
+        // Starts listening to the reguests. All acceptors share the same socket.
 		try
 		{
-			this.lastRequestThread = new RequestListenerThread(this.port, service, null);
-			this.lastRequestThread.setDaemon(true);
-	        this.lastRequestThread.start();
+			this.serverSocket = createServerSocket(this.port, this.acceptBacklog, 
+					this.receiveBufferSize, null);
 		}
 		catch (IOException e)
 		{
 			System.err.println("Failed to create a RequestListener");
 			e.printStackTrace();
+			
+			shutdownWorkerPool();
+			return;
+		}
+		
+		RequestListenerThread[] listeners = new RequestListenerThread[this.acceptorAmount];
+		for (int i = 0; i < listeners.length; i++)
+		{
+			listeners[i] = new RequestListenerThread(this.serverSocket, service, 
+					this.workerPool, connectionThreadFactory, this.connectionCounter, 
+					this.tcpNoDelay);
+			listeners[i].setName("Nexus acceptor " + (i + 1));
+			listeners[i].setDaemon(true);
+		}
+		for (RequestListenerThread listener : listeners)
+		{
+			listener.start();
 		}
+		this.listenerThreads = listeners;
 	}
 	
 	/**
@@ -115,11 +389,98 @@ public class Server
 	 */
 	public void end()
 	{
-		if (this.lastRequestThread == null)
+		if (this.listenerThreads == null)
 			return;
 		
-		this.lastRequestThread.interrupt();
-		this.lastRequestThread = null;
+		for (RequestListenerThread listener : this.listenerThreads)
+		{
+			listener.interrupt();
+		}
+		this.listenerThreads = null;
+		
+		// Closing the socket releases the acceptors blocked in accept() and frees the port
+		try
+		{
+			this.serverSocket.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to close the server socket");
+			e.printStackTrace();
+		}
+		this.serverSocket = null;
+		
+		shutdownWorkerPool();
+	}
+	
+	private void shutdownWorkerPool()
+	{
+		// The connections that are already being handled are allowed to finish
+		if (this.workerPool != null)
+		{
+			this.workerPool.shutdown();
+			((ServiceUnavailablePolicy) this.workerPool.getRejectedExecutionHandler()).shutdown();
+			this.workerPool = null;
+		}
+	}
+	
+	private static ServerSocket createServerSocket(int port, int backlog, 
+			int receiveBufferSize, SSLServerSocketFactory sf) throws IOException
+	{
+		ServerSocket socket;
+		// The socket is opened through a channel so that the connections have channels too
+		if (sf == null)
+			socket = ServerSocketChannel.open().socket();
+		else
+			socket = sf.createServerSocket();
+		
+		// The receive buffer must be set before binding for it to affect the window size
+		if (receiveBufferSize > 0)
+			socket.setReceiveBufferSize(receiveBufferSize);
+		
+		try
+		{
+			// TODO: Already in use: JVM_Bind
+			socket.bind(new InetSocketAddress(port), backlog);
+		}
+		catch (IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+		
+		return socket;
+	}
+	
+	private static ThreadFactory createVirtualThreadFactory()
+	{
+		// Virtual threads are accessed reflectively so that the server still runs on older 
+		// platforms. The factory is created with Thread.ofVirtual().factory()
+		try
+		{
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod(
+					"factory");
+			return (ThreadFactory) factoryMethod.invoke(builder);
+		}
+		catch (ReflectiveOperationException | ClassCastException e)
+		{
+			return null;
+		}
+	}
+	
+	private static ThreadPoolExecutor createWorkerPool(int corePoolSize, int maxPoolSize, 
+			int queueCapacity)
+	{
+		// The pool grows past its core size only once the queue is full
+		BlockingQueue<Runnable> queue;
+		if (queueCapacity > 0)
+			queue = new ArrayBlockingQueue<>(queueCapacity);
+		else
+			queue = new SynchronousQueue<>();
+		
+		return new ThreadPoolExecutor(corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, 
+				queue, new WorkerThreadFactory(), new ServiceUnavailablePolicy());
 	}
 	
 	
@@ -131,30 +492,43 @@ public class Server
 		
 	    private final ServerSocket serversocket;
 	    private final HttpService httpService;
+	    private final ThreadPoolExecutor workerPool;
+	    private final ThreadFactory threadFactory;
+	    private final ConnectionCounter connectionCounter;
+	    private final boolean tcpNoDelay;
+	    private final AtomicLong acceptedConnections;
+	    private final long startNanos;
 
 	    
 	    // CONSTRUCTOR	-------------------------------------------------------
 	    
 	    /**
 	     * Creates a new RequestListenerThread that will handle the requests coming 
-	     * to the given port. The thread uses the given service.
+	     * to the given socket. The thread uses the given service.
 	     * 
-	     * @param port The port used to connect to the server
+	     * @param serversocket The socket the connections are accepted from. The socket may 
+	     * be shared between multiple listeners.
 	     * @param httpService The service hosted on the server
-	     * @param sf The SocketFactroy that will create the socket to listen (optional)
-	     * @throws IOException If the serverSocket couldn't be created
+	     * @param workerPool The pool that handles the connections (optional). If null, a 
+	     * new thread is started for each connection.
+	     * @param threadFactory The factory that creates the connection threads when no 
+	     * worker pool is used
+	     * @param connectionCounter The counter that keeps track of the open connections
+	     * @param tcpNoDelay Should TCP_NODELAY be enabled for the accepted connections
 	     */
-	    public RequestListenerThread(int port, HttpService httpService, 
-	    		SSLServerSocketFactory sf) throws IOException
+	    public RequestListenerThread(ServerSocket serversocket, HttpService httpService, 
+	    		ThreadPoolExecutor workerPool, ThreadFactory threadFactory, 
+	    		ConnectionCounter connectionCounter, boolean tcpNoDelay)
 	    {
 	    	// Initializes attributes
-	    	if (sf == null)
-	    		// TODO: Already in use: JVM_Bind
-	    		this.serversocket = new ServerSocket(port);
-	    	else
-	    		this.serversocket = sf.createServerSocket(port);
-	    	
+	    	this.serversocket = serversocket;
 	    	this.httpService = httpService;
+	    	this.workerPool = workerPool;
+	    	this.threadFactory = threadFactory;
+	    	this.connectionCounter = connectionCounter;
+	    	this.tcpNoDelay = tcpNoDelay;
+	    	this.acceptedConnections = new AtomicLong();
+	    	this.startNanos = System.nanoTime();
 	    }
 
 	    
@@ -173,12 +547,22 @@ public class Server
 	    		{
 	    			// Sets up the HTTP connection
 	    			Socket socket = this.serversocket.accept();
+	    			this.acceptedConnections.incrementAndGet();
+	    			socket.setTcpNoDelay(this.tcpNoDelay);
+	    			
 	    			HttpServerConnection connection = connectionFactory.createConnection(socket);
-
-	    			// Start worker thread for the client
-	    			Thread t = new WorkerThread(this.httpService, connection);
-	    			t.setDaemon(true);
-	    			t.start();
+	    			ConnectionHandler handler = new ConnectionHandler(this.httpService, 
+	    					connection, socket, this.connectionCounter);
+	    			
+	    			// Gives the connection to the worker pool or starts a new worker thread 
+	    			// for the client
+	    			if (this.workerPool != null)
+	    			{
+	    				socket.setSoTimeout(POOLED_KEEP_ALIVE_MILLIS);
+	    				this.workerPool.execute(handler);
+	    			}
+	    			else
+	    				this.threadFactory.newThread(handler).start();
 	    		}
 	    		catch (InterruptedIOException ex)
 	    		{
@@ -187,30 +571,55 @@ public class Server
 	    		}
 	    		catch (IOException e)
 	    		{
-	    			System.err.println("I/O error initialising connection thread: "
-	    					+ e.getMessage());
+	    			// The socket is closed when the server ends
+	    			if (!this.serversocket.isClosed())
+	    				System.err.println("I/O error initialising connection thread: "
+	    						+ e.getMessage());
 	    			break;
 	    		}
 	    	}
 	    }
+	    
+	    
+	    // OTHER METHODS	---------------------------------------------------
+	    
+	    /**
+	     * @return How many connections this thread has accepted per second since it was 
+	     * created
+	     */
+	    public double getAcceptRate()
+	    {
+	    	double seconds = (System.nanoTime() - this.startNanos) / 1000000000.0;
+	    	if (seconds <= 0)
+	    		return 0;
+	    	return this.acceptedConnections.get() / seconds;
+	    }
 	}
 	
-	private static class WorkerThread extends Thread
+	private static class ConnectionHandler implements Runnable
     {
     	// ATTRIBUTES	--------------------------------------------------
     	
         private final HttpService httpservice;
         private final HttpServerConnection connection;
+        private final Socket socket;
+        private final SocketChannel channel;
+        private final ConnectionCounter counter;
+        private boolean active;
         
         
         // CONSTRUCTOR	--------------------------------------------------
 
-        public WorkerThread(final HttpService httpservice, 
-        		final HttpServerConnection connection)
+        public ConnectionHandler(final HttpService httpservice, 
+        		final HttpServerConnection connection, final Socket socket, 
+        		final ConnectionCounter counter)
         {
-            super();
             this.httpservice = httpservice;
             this.connection = connection;
+            this.socket = socket;
+            this.channel = socket.getChannel();
+            this.counter = counter;
+            this.active = false;
         }
         
         
@@ -220,17 +629,26 @@ public class Server
         public void run()
         {
             HttpContext context = new BasicHttpContext(null);
+            context.setAttribute(CONNECTION_HANDLER_ATTRIBUTE, this);
+            if (this.channel != null)
+            	context.setAttribute(SOCKET_CHANNEL_ATTRIBUTE, this.channel);
+            this.counter.open.incrementAndGet();
             try
             {
                 while (!Thread.interrupted() && this.connection.isOpen())
                 {
                     this.httpservice.handleRequest(this.connection, context);
+                    setActive(false);
                 }
             }
             catch (ConnectionClosedException ex)
             {
             	// Client closed connection, ok
             }
+            catch (SocketTimeoutException ex)
+            {
+            	// The connection was idle for too long, ok
+            }
             catch (IOException ex)
             {
                 System.err.println("I/O error: " + ex.getMessage());
@@ -241,6 +659,9 @@ public class Server
             }
             finally
             {
+            	setActive(false);
+            	this.counter.open.decrementAndGet();
+            	
                 try
                 {
                     this.connection.shutdown();
@@ -251,5 +672,214 @@ public class Server
                 }
             }
         }
+        
+        
+        // OTHER METHODS	----------------------------------------------
+        
+        /**
+         * Marks the connection as handling a request or waiting for one
+         * @param active Is the connection currently handling a request
+         */
+        public void setActive(boolean active)
+        {
+        	// Only the connection's own thread calls this
+        	if (this.active == active)
+        		return;
+        	
+        	this.active = active;
+        	if (active)
+        		this.counter.active.incrementAndGet();
+        	else
+        		this.counter.active.decrementAndGet();
+        }
+        
+        /**
+         * Informs the client that the server is too busy to handle the connection and 
+         * closes it. The request is read and discarded after the response has been sent, 
+         * since closing a socket that still has unread data resets the connection, in which 
+         * case the client may never see the response.
+         */
+        public void reject()
+        {
+        	try
+        	{
+        		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 
+        				HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+        		response.addHeader(HTTP.CONTENT_LEN, "0");
+        		response.addHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
+        		
+        		this.connection.sendResponseHeader(response);
+        		this.connection.flush();
+        		
+        		// The client sees the end of the response, after which anything it still 
+        		// sends is discarded until it closes the connection or the time runs out
+        		this.socket.shutdownOutput();
+        		drainInput();
+        	}
+        	catch (IOException | HttpException e)
+        	{
+        		// The client is dropped in any case
+        	}
+        	finally
+        	{
+        		try
+        		{
+        			this.connection.shutdown();
+        		}
+        		catch (IOException ignore)
+        		{
+        			// Ignores the exception
+        		}
+        	}
+        }
+        
+        /**
+         * Closes the connection right away without sending a response
+         */
+        public void abort()
+        {
+        	try
+        	{
+        		this.connection.shutdown();
+        	}
+        	catch (IOException ignore)
+        	{
+        		// Ignores the exception
+        	}
+        }
+        
+        private void drainInput() throws IOException
+        {
+        	// Reading stops at the end of the stream, at the size limit or at the deadline. 
+        	// Only the data that is already on its way is read, so reading also stops once 
+        	// the client stays silent for a moment.
+        	this.socket.setSoTimeout(REJECT_IDLE_MILLIS);
+        	long deadline = System.nanoTime() + REJECT_LINGER_MILLIS * 1000000L;
+        	InputStream input = this.socket.getInputStream();
+        	byte[] buffer = new byte[4096];
+        	int drained = 0;
+        	while (drained < MAX_DRAINED_BYTES && System.nanoTime() < deadline)
+        	{
+        		int read = input.read(buffer);
+        		if (read < 0)
+        			break;
+        		drained += read;
+        	}
+        }
     }
+	
+	private static class ServiceUnavailablePolicy implements RejectedExecutionHandler
+	{
+		// ATTRIBUTES	------------------------------------------
+		
+		private final ThreadPoolExecutor rejector;
+		
+		
+		// CONSTRUCTOR	------------------------------------------
+		
+		public ServiceUnavailablePolicy()
+		{
+			// The rejections are sent in separate threads so that a slow client doesn't 
+			// block the acceptor. A few threads are used so that a couple of lingering 
+			// clients don't hold up the rest. If even they fall behind, the connections are 
+			// closed without a response.
+			this.rejector = new ThreadPoolExecutor(REJECTOR_THREADS, REJECTOR_THREADS, 60, 
+					TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(REJECT_QUEUE_CAPACITY), 
+					new WorkerThreadFactory(), new AbortPolicy());
+			this.rejector.allowCoreThreadTimeOut(true);
+		}
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------
+		
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+		{
+			// Connections that don't fit into the pool are answered with 503
+			if (r instanceof ConnectionHandler)
+				this.rejector.execute(new RejectionTask((ConnectionHandler) r));
+		}
+		
+		
+		// OTHER METHODS	--------------------------------------
+		
+		public void shutdown()
+		{
+			this.rejector.shutdown();
+		}
+	}
+	
+	private static class RejectionTask implements Runnable
+	{
+		// ATTRIBUTES	------------------------------------------
+		
+		private final ConnectionHandler handler;
+		
+		
+		// CONSTRUCTOR	------------------------------------------
+		
+		public RejectionTask(ConnectionHandler handler)
+		{
+			this.handler = handler;
+		}
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------
+		
+		@Override
+		public void run()
+		{
+			this.handler.reject();
+		}
+	}
+	
+	private static class AbortPolicy implements RejectedExecutionHandler
+	{
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+		{
+			// The rejection task holds the connection handler
+			if (r instanceof RejectionTask)
+				((RejectionTask) r).handler.abort();
+		}
+	}
+	
+	private static class ConnectionActivator implements HttpRequestInterceptor
+	{
+		@Override
+		public void process(HttpRequest request, HttpContext context)
+		{
+			// Once a request has been received, the connection is considered active until 
+			// the response has been sent
+			Object handler = context.getAttribute(CONNECTION_HANDLER_ATTRIBUTE);
+			if (handler instanceof ConnectionHandler)
+				((ConnectionHandler) handler).setActive(true);
+		}
+	}
+	
+	private static class ConnectionCounter
+	{
+		// ATTRIBUTES	------------------------------------------
+		
+		private final AtomicInteger open = new AtomicInteger();
+		private final AtomicInteger active = new AtomicInteger();
+	}
+	
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+		// ATTRIBUTES	------------------------------------------
+		
+		private final AtomicInteger createdThreads = new AtomicInteger();
+		
+		
+		// IMPLEMENTED METHODS	----------------------------------
+		
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "Nexus worker " + this.createdThreads.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
 }
@@ -0,0 +1,46 @@
+package nexus_http;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * SharedByteArrayEntity is a byte array entity whose content can be read without copying 
+ * it. The array is shared with the entity, so it mustn't be modified once the entity has 
+ * been created. {@link ResponseReplicate} uses the array directly instead of writing the 
+ * content again.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class SharedByteArrayEntity extends ByteArrayEntity
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private final byte[] bytes;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new entity
+	 * @param bytes The content of the entity. The array mustn't be modified afterwards.
+	 * @param contentType The content type of the entity
+	 */
+	public SharedByteArrayEntity(byte[] bytes, ContentType contentType)
+	{
+		super(bytes, contentType);
+		
+		this.bytes = bytes;
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return The content of the entity. The array shouldn't be modified.
+	 */
+	public byte[] getBytes()
+	{
+		return this.bytes;
+	}
+}
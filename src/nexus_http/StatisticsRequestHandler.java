@@ -0,0 +1,68 @@
+package nexus_http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+
+import nexus_event.HttpStatisticsRecorder;
+
+/**
+ * StatisticsRequestHandler responds to GET requests with the request statistics collected 
+ * by a recorder. The statistics are written as a plain text table.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class StatisticsRequestHandler implements RequestHandler
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private HttpStatisticsRecorder recorder;
+	private String acceptedPath;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new handler
+	 * @param recorder The recorder that collects the statistics
+	 * @param acceptedPath The path the statistics are requested from, starting with '/'
+	 */
+	public StatisticsRequestHandler(HttpStatisticsRecorder recorder, String acceptedPath)
+	{
+		this.recorder = recorder;
+		this.acceptedPath = acceptedPath;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+			throws org.apache.http.HttpException, IOException
+	{
+		MethodType method = MethodType.parseFromString(request.getRequestLine().getMethod());
+		if (method != MethodType.GET)
+		{
+			MethodNotSupportedException e = new MethodNotSupportedException(method);
+			response.setStatusCode(e.getStatusCode());
+			response.setEntity(new StringEntity(e.getMessage(), ContentType.TEXT_PLAIN));
+			return;
+		}
+		
+		response.setStatusCode(HttpStatus.SC_OK);
+		response.setEntity(new StringEntity(this.recorder.getStatistics().toString(), 
+				ContentType.create("text/plain", "UTF-8")));
+	}
+	
+	@Override
+	public String getAcceptedPath()
+	{
+		return this.acceptedPath;
+	}
+}
@@ -0,0 +1,213 @@
+package nexus_http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+
+/**
+ * ValidatorCache holds the latest responses a client has received for GET requests, along 
+ * with their entity tags (ETag). When the same resource is requested again, the tag is 
+ * sent with the request (If-None-Match) and the server may answer with 304 (not modified) 
+ * instead of sending the content again, in which case the cached response is used. The 
+ * least recently used responses are removed when the cache is full. The cache can be used 
+ * by multiple threads at once.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ * @see Client#setValidatorCache(ValidatorCache)
+ */
+public class ValidatorCache
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private final Map<String, CachedResponse> responses;
+	private long hits, misses;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new cache
+	 * @param capacity How many responses the cache holds at most
+	 */
+	public ValidatorCache(final int capacity)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The capacity must be positive");
+		
+		this.responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+		this.hits = 0;
+		this.misses = 0;
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How many times the server has answered that the cached response is still 
+	 * valid
+	 */
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+	
+	/**
+	 * @return How many times the server has sent new content for a cached response
+	 */
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+	
+	/**
+	 * @return How many responses are currently cached
+	 */
+	public synchronized int size()
+	{
+		return this.responses.size();
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Removes all the cached responses
+	 */
+	public synchronized void clear()
+	{
+		this.responses.clear();
+	}
+	
+	/**
+	 * Prepares a request for validation. If a response is cached for the request, the tag 
+	 * of the response is added to the request.
+	 * @param request The request that is about to be sent
+	 * @param httpRequest The http request that is sent
+	 * @return The validation that should be completed once the response has been 
+	 * received. Null if the request can't be validated.
+	 */
+	Validation prepare(Request request, HttpRequest httpRequest)
+	{
+		if (request.getMethod() != MethodType.GET)
+			return null;
+		
+		String key = request.getUriLine();
+		CachedResponse cached;
+		synchronized (this)
+		{
+			cached = this.responses.get(key);
+		}
+		
+		if (cached != null)
+			httpRequest.setHeader("If-None-Match", cached.eTag);
+		return new Validation(key, cached);
+	}
+	
+	private synchronized void put(String key, CachedResponse response)
+	{
+		this.responses.put(key, response);
+	}
+	
+	private synchronized void remove(String key)
+	{
+		this.responses.remove(key);
+	}
+	
+	private synchronized void recordValidation(boolean valid)
+	{
+		if (valid)
+			this.hits ++;
+		else
+			this.misses ++;
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class CachedResponse
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final String eTag;
+		private final ResponseReplicate response;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public CachedResponse(String eTag, ResponseReplicate response)
+		{
+			this.eTag = eTag;
+			this.response = response;
+		}
+	}
+	
+	/**
+	 * Validation connects a sent request to the response that was cached for it when the 
+	 * request was sent
+	 * 
+	 * @author Mikko Hilpinen
+	 * @since 17.10.2026
+	 */
+	class Validation
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final String key;
+		private final CachedResponse cached;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		private Validation(String key, CachedResponse cached)
+		{
+			this.key = key;
+			this.cached = cached;
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		/**
+		 * Updates the cache based on the received response
+		 * @param response The response received from the server
+		 * @return The response that should be used. If the server answered that the 
+		 * cached response is still valid, that response is returned.
+		 */
+		ResponseReplicate complete(ResponseReplicate response)
+		{
+			int status = response.getStatusCode();
+			if (status == HttpStatus.SC_NOT_MODIFIED && this.cached != null)
+			{
+				recordValidation(true);
+				return this.cached.response;
+			}
+			
+			if (this.cached != null)
+				recordValidation(false);
+			
+			String eTag = response.getHeaderValue("ETag");
+			if (status == HttpStatus.SC_OK && eTag != null)
+			{
+				// The content is read now so that the response can be used multiple times
+				response.getContent();
+				put(this.key, new CachedResponse(eTag, response));
+			}
+			else
+				remove(this.key);
+			
+			return response;
+		}
+	}
+}
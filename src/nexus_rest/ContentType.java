@@ -1,29 +1,114 @@
 package nexus_rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.apache.http.Consts;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
 /**
- * The contentType determines in which form the information is sent from the server
+ * The contentType determines in which form the information is sent from the server. Smile 
+ * and CBOR are binary forms of json. They are written and read with the same generators 
+ * and parsers as json, so everything that can be written as json can be written in them as 
+ * well. The binary forms are smaller and faster to write and parse, but they require 
+ * Jackson's data format libraries (jackson-dataformat-smile and jackson-dataformat-cbor). 
+ * Other formats can be added with {@link EntityWriterFactory}.
+ * 
  * @author Mikko Hilpinen
  * @since 8.5.2015
  */
-public enum ContentType
+public enum ContentType implements EntityWriterFactory
 {
 	@SuppressWarnings("javadoc")
-	XML,
+	XML(org.apache.http.entity.ContentType.create("text/xml", Consts.UTF_8)),
+	@SuppressWarnings("javadoc")
+	JSON(org.apache.http.entity.ContentType.APPLICATION_JSON),
 	@SuppressWarnings("javadoc")
-	JSON;
+	SMILE(org.apache.http.entity.ContentType.create("application/x-jackson-smile")),
+	@SuppressWarnings("javadoc")
+	CBOR(org.apache.http.entity.ContentType.create("application/cbor"));
+	
+	
+	// ATTRIBUTES	----------------------
 	
+	private final org.apache.http.entity.ContentType apacheContentType;
 	
-	// METHODS	--------------------------
+	
+	// CONSTRUCTOR	----------------------
+	
+	private ContentType(org.apache.http.entity.ContentType apacheContentType)
+	{
+		this.apacheContentType = apacheContentType;
+	}
+	
+	
+	// IMPLEMENTED METHODS	--------------
+	
+	@Override
+	public String getName()
+	{
+		return name();
+	}
 	
 	/**
-	 * @return The apache content type represented by this content type
+	 * @return The apache content type represented by this content type. The text documents 
+	 * are always written in UTF-8.
 	 */
+	@Override
 	public org.apache.http.entity.ContentType getApacheContentType()
+	{
+		return this.apacheContentType;
+	}
+	
+	@Override
+	public EntityWriter createWriter(OutputStream output, String serverLink, 
+			Map<String, String> parameters) throws IOException
 	{
 		if (this == XML)
-			return org.apache.http.entity.ContentType.TEXT_XML;
+			return new XmlEntityWriter(output, serverLink, parameters);
 		else
-			return org.apache.http.entity.ContentType.APPLICATION_JSON;
+			return new JsonEntityWriter(createJsonWriter(output), serverLink);
+	}
+	
+	
+	// OTHER METHODS	------------------
+	
+	/**
+	 * @return Is the content written in a binary form instead of text
+	 */
+	public boolean isBinary()
+	{
+		return this == SMILE || this == CBOR;
+	}
+	
+	/**
+	 * Creates a generator that writes content of this type. Works with all the types except 
+	 * xml. The generators are created with a shared factory, which recycles their buffers.
+	 * @param output The stream the content is written into
+	 * @return A generator that writes into the stream
+	 * @throws IOException If the generator couldn't be created
+	 */
+	public JsonGenerator createJsonWriter(OutputStream output) throws IOException
+	{
+		return getJsonFactory().createGenerator(output);
+	}
+	
+	/**
+	 * Creates a parser that reads content of this type. Works with all the types except xml.
+	 * @param input The stream the content is read from
+	 * @return A parser that reads the stream
+	 * @throws IOException If the parser couldn't be created
+	 */
+	public JsonParser createJsonReader(InputStream input) throws IOException
+	{
+		return getJsonFactory().createParser(input);
 	}
 	
 	/**
@@ -41,4 +126,38 @@ public enum ContentType
 		
 		return null;
 	}
+	
+	private JsonFactory getJsonFactory()
+	{
+		switch (this)
+		{
+			case JSON: return JsonFactoryHolder.FACTORY;
+			case SMILE: return SmileFactoryHolder.FACTORY;
+			case CBOR: return CborFactoryHolder.FACTORY;
+			default: throw new IllegalStateException(this + 
+					" can't be written or read with a json factory");
+		}
+	}
+	
+	
+	// SUBCLASSES	----------------------
+	
+	// The factories are thread safe and expensive to create, so they are shared. They are 
+	// only created when they are first used. The fields have the general type so that the 
+	// data format libraries are only loaded when the binary types are used.
+	
+	private static class JsonFactoryHolder
+	{
+		private static final JsonFactory FACTORY = new JsonFactory();
+	}
+	
+	private static class SmileFactoryHolder
+	{
+		private static final JsonFactory FACTORY = new SmileFactory();
+	}
+	
+	private static class CborFactoryHolder
+	{
+		private static final JsonFactory FACTORY = new CBORFactory();
+	}
 }
@@ -0,0 +1,66 @@
+package nexus_rest;
+
+import java.io.IOException;
+
+/**
+ * EntityWriters write restEntities into a document in a specific format. A new writer is 
+ * created for each document, so the format is chosen only once per request and the 
+ * entities don't need to know which format they are written in. The entities write their 
+ * content by calling the methods between {@link #writeEntityStart(RestEntity)} and 
+ * {@link #writeEntityEnd()}.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ * @see EntityWriterFactory
+ */
+public interface EntityWriter
+{
+	/**
+	 * Starts the document. This is called before anything else is written.
+	 * @throws IOException If the writing failed
+	 */
+	public void writeDocumentStart() throws IOException;
+	
+	/**
+	 * Ends the document and flushes the written content into the output stream. Nothing is 
+	 * written after this.
+	 * @throws IOException If the writing failed
+	 */
+	public void writeDocumentEnd() throws IOException;
+	
+	/**
+	 * Starts writing an entity. The attributes, links and entities written after this 
+	 * belong to the entity until the entity is ended.
+	 * @param entity The entity that is written
+	 * @throws IOException If the writing failed
+	 */
+	public void writeEntityStart(RestEntity entity) throws IOException;
+	
+	/**
+	 * Ends the entity that was started last
+	 * @throws IOException If the writing failed
+	 */
+	public void writeEntityEnd() throws IOException;
+	
+	/**
+	 * Writes an attribute with a value
+	 * @param name The name of the attribute
+	 * @param value The value of the attribute
+	 * @throws IOException If the writing failed
+	 */
+	public void writeAttribute(String name, String value) throws IOException;
+	
+	/**
+	 * Writes a link to an entity
+	 * @param name The name of the link
+	 * @param target The entity the link points to
+	 * @throws IOException If the writing failed
+	 */
+	public void writeLink(String name, RestEntity target) throws IOException;
+	
+	/**
+	 * Releases the resources used by the writer. This is called even when the writing 
+	 * fails.
+	 */
+	public void close();
+}
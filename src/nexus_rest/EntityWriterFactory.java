@@ -0,0 +1,41 @@
+package nexus_rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * EntityWriterFactories represent the formats the restEntities can be written in. New 
+ * formats can be added to a {@link RestManager} without changing the entities. 
+ * {@link ContentType} contains the formats that are always available.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public interface EntityWriterFactory
+{
+	/**
+	 * @return The name of the format. The client may request the format with the 
+	 * "contentType" parameter by using this name (case-insensitive).
+	 */
+	public String getName();
+	
+	/**
+	 * @return The content type of the documents written in this format. The client may 
+	 * request the format by including the mime type in the Accept header.
+	 */
+	public org.apache.http.entity.ContentType getApacheContentType();
+	
+	/**
+	 * Creates a new writer that writes a single document
+	 * @param output The stream the document is written into
+	 * @param serverLink The server part of the links, containing the server address, the 
+	 * port number and the first "/"
+	 * @param parameters The parameters provided by the client. The parameter "linkType" 
+	 * affects how the links are written.
+	 * @return A writer that writes into the stream
+	 * @throws IOException If the writer couldn't be created
+	 */
+	public EntityWriter createWriter(OutputStream output, String serverLink, 
+			Map<String, String> parameters) throws IOException;
+}
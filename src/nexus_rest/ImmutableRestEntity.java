@@ -63,4 +63,12 @@ public class ImmutableRestEntity extends RestEntity
 	{
 		return null;
 	}
+	
+	@Override
+	public long getVersion()
+	{
+		// Immutable entities don't have any computed content. Subclasses that write content 
+		// through getMissingEntities should return -1 instead.
+		return getTrackedVersion();
+	}
 }
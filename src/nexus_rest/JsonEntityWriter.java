@@ -0,0 +1,84 @@
+package nexus_rest;
+
+import java.io.IOException;
+
+import tempest_io.JsonIOAccessor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * JsonEntityWriter writes the entities as json objects where each attribute and link is a 
+ * field. The links are written as full links. The same writer works with the binary forms 
+ * of json (smile and cbor) since they are written with the same generator interface.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class JsonEntityWriter implements EntityWriter
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private final JsonGenerator generator;
+	private final String serverLink;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new writer
+	 * @param generator The generator that writes the document
+	 * @param serverLink The server part of the links, containing the server address, the 
+	 * port number and the first "/"
+	 */
+	public JsonEntityWriter(JsonGenerator generator, String serverLink)
+	{
+		this.generator = generator;
+		this.serverLink = serverLink;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void writeDocumentStart() throws IOException
+	{
+		this.generator.writeStartObject();
+	}
+	
+	@Override
+	public void writeDocumentEnd() throws IOException
+	{
+		this.generator.writeEndObject();
+		this.generator.flush();
+	}
+	
+	@Override
+	public void writeEntityStart(RestEntity entity) throws IOException
+	{
+		this.generator.writeObjectFieldStart(entity.getName());
+	}
+	
+	@Override
+	public void writeEntityEnd() throws IOException
+	{
+		this.generator.writeEndObject();
+	}
+	
+	@Override
+	public void writeAttribute(String name, String value) throws IOException
+	{
+		this.generator.writeStringField(name, value);
+	}
+	
+	@Override
+	public void writeLink(String name, RestEntity target) throws IOException
+	{
+		this.generator.writeStringField(name, this.serverLink + target.getPath());
+	}
+	
+	@Override
+	public void close()
+	{
+		JsonIOAccessor.closeWriter(this.generator);
+	}
+}
@@ -0,0 +1,123 @@
+package nexus_rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * OutputBuffer collects small writes into a byte array before passing them to the actual 
+ * output stream. Xml writers write the document a few bytes at a time, which is slow when 
+ * each write goes through a synchronized or chunked stream. A few buffers are kept in a 
+ * shared pool, so a new buffer is only allocated when many documents are written at once.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+final class OutputBuffer extends OutputStream
+{
+	// ATTRIBUTES	--------------------------------
+	
+	private static final int SIZE = 8 * 1024;
+	private static final int MAX_RECYCLED_AMOUNT = 32;
+	private static final BlockingQueue<OutputBuffer> RECYCLED = 
+			new ArrayBlockingQueue<>(MAX_RECYCLED_AMOUNT);
+	
+	private final byte[] buffer;
+	private int count;
+	private OutputStream target;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	private OutputBuffer()
+	{
+		this.buffer = new byte[SIZE];
+		this.count = 0;
+		this.target = null;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void write(int b) throws IOException
+	{
+		if (this.count == this.buffer.length)
+			flushBuffer();
+		this.buffer[this.count ++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		// Large arrays are written straight into the target
+		if (len >= this.buffer.length)
+		{
+			flushBuffer();
+			this.target.write(b, off, len);
+			return;
+		}
+		
+		if (len > this.buffer.length - this.count)
+			flushBuffer();
+		System.arraycopy(b, off, this.buffer, this.count, len);
+		this.count += len;
+	}
+	
+	@Override
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		this.target.flush();
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		// The target stream is left open, like it would be without the buffer
+		flush();
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Takes a buffer into use. The buffer should be released once it is no longer used.
+	 * @param target The stream the buffered bytes are written into
+	 * @return A buffer that writes into the target stream
+	 */
+	static OutputBuffer acquire(OutputStream target)
+	{
+		// The buffer is taken out of the pool so that a nested document gets a buffer of its 
+		// own
+		OutputBuffer buffer = RECYCLED.poll();
+		if (buffer == null)
+			buffer = new OutputBuffer();
+		
+		buffer.target = target;
+		return buffer;
+	}
+	
+	/**
+	 * Returns the buffer so that it can be used for the next document. Any bytes that 
+	 * haven't been flushed are discarded. The buffer must not be used after it has been 
+	 * released.
+	 */
+	void release()
+	{
+		this.target = null;
+		this.count = 0;
+		// If the pool is already full, the buffer is dropped
+		RECYCLED.offer(this);
+	}
+	
+	private void flushBuffer() throws IOException
+	{
+		if (this.count > 0)
+		{
+			this.target.write(this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+}
@@ -4,12 +4,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
-
-import com.fasterxml.jackson.core.JsonGenerator;
-
-import flow_io.XMLIOAccessor;
 import nexus_http.HttpException;
 import nexus_http.MethodNotSupportedException;
 import nexus_http.MethodType;
@@ -54,17 +48,11 @@ public class RestAttributeWrapper extends TemporaryRestEntity
 	// IMPLEMENTED METHODS	-----------------------
 	
 	@Override
-	public void writeContent(String serverLink, XMLStreamWriter xmlWriter, 
-			JsonGenerator jsonWriter, ContentType contentType, Map<String, String> parameters) 
-			throws XMLStreamException, HttpException, IOException
+	public void writeContent(EntityWriter writer, Map<String, String> parameters) 
+			throws HttpException, IOException
 	{
 		if (this.value != null)
-		{
-			if (contentType == ContentType.XML)
-				XMLIOAccessor.writeElementWithData(getName(), this.value, xmlWriter);
-			else
-				jsonWriter.writeStringField(getName(), this.value);
-		}
+			writer.writeAttribute(getName(), this.value);
 	}
 	
 	@Override
@@ -0,0 +1,254 @@
+package nexus_rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import nexus_http.HttpException;
+
+/**
+ * RestContentEntity is a http entity that writes a restEntity document straight into the 
+ * output stream when the response is sent. This way the document is never held in memory as 
+ * a whole. Since the length of the document isn't known beforehand, the content is sent in 
+ * chunks. When the document is written into memory instead, the byte buffers are recycled 
+ * through a small pool shared by all threads. Small documents can be written into memory 
+ * before the response is started (see {@link #toByteArray(int)}), so that any problems 
+ * found while writing them can still be reported with a proper status.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class RestContentEntity extends AbstractHttpEntity
+{
+	// ATTRIBUTES	--------------------------------
+	
+	// Larger buffers are not kept around after use
+	private static final int MAX_RECYCLED_SIZE = 64 * 1024;
+	private static final int MAX_RECYCLED_AMOUNT = 32;
+	// The pool is shared since a thread (a virtual one, for example) may only write a 
+	// single document
+	private static final BlockingQueue<ByteArrayOutputStream> RECYCLED_OUTPUTS = 
+			new ArrayBlockingQueue<>(MAX_RECYCLED_AMOUNT);
+	
+	private RestEntity entity;
+	private String serverLink;
+	private EntityWriterFactory format;
+	private Map<String, String> parameters;
+	private boolean linkOnly;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new http entity
+	 * @param entity The restEntity that is written into the response
+	 * @param serverLink The server part of the link, containing the server address, the port 
+	 * number and the first "/"
+	 * @param format The format in which the entity is written (for example a 
+	 * {@link ContentType})
+	 * @param parameters The parameters provided by the client
+	 * @param linkOnly Should only a link to the entity be written instead of its content
+	 */
+	public RestContentEntity(RestEntity entity, String serverLink, EntityWriterFactory format, 
+			Map<String, String> parameters, boolean linkOnly)
+	{
+		this.entity = entity;
+		this.serverLink = serverLink;
+		this.format = format;
+		this.parameters = parameters;
+		this.linkOnly = linkOnly;
+		
+		setContentType(format.getApacheContentType().toString());
+		setChunked(true);
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public boolean isRepeatable()
+	{
+		// The document can be written as many times as necessary
+		return true;
+	}
+	
+	@Override
+	public long getContentLength()
+	{
+		return -1;
+	}
+	
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		// The document is only buffered when someone wants to read it
+		try
+		{
+			return new ByteArrayInputStream(toByteArray());
+		}
+		catch (HttpException e)
+		{
+			throw new IOException("Failed to write " + this.entity.getPath(), e);
+		}
+	}
+	
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException
+	{
+		try
+		{
+			write(outstream);
+		}
+		catch (HttpException e)
+		{
+			// The response has already been started at this point so it can only be cut
+			// short
+			throw new IOException("Failed to write " + this.entity.getPath(), e);
+		}
+	}
+	
+	@Override
+	public boolean isStreaming()
+	{
+		return false;
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Writes the whole document into memory
+	 * @return The document as bytes
+	 * @throws HttpException If the content couldn't be written due to the request or the 
+	 * entity
+	 * @throws IOException If the document couldn't be written
+	 */
+	public byte[] toByteArray() throws HttpException, IOException
+	{
+		return toByteArray(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Writes the document into memory, unless it is longer than the given limit
+	 * @param maxLength The maximum length of the document in bytes
+	 * @return The document as bytes. Null if the document is longer than maxLength.
+	 * @throws HttpException If the content couldn't be written due to the request or the 
+	 * entity
+	 * @throws IOException If the document couldn't be written
+	 */
+	public byte[] toByteArray(int maxLength) throws HttpException, IOException
+	{
+		// The buffer is taken out of the pool while it is being used, so that a nested call 
+		// gets a buffer of its own
+		ByteArrayOutputStream output = RECYCLED_OUTPUTS.poll();
+		if (output == null)
+			output = new ByteArrayOutputStream(1024);
+		
+		LimitedOutputStream limited = new LimitedOutputStream(output, maxLength);
+		try
+		{
+			write(limited);
+			return output.toByteArray();
+		}
+		catch (IOException e)
+		{
+			// The writers may wrap the exception, so the stream is asked instead
+			if (limited.exceeded)
+				return null;
+			throw e;
+		}
+		finally
+		{
+			// If the pool is already full, the buffer is simply left for the garbage collector
+			if (output.size() <= MAX_RECYCLED_SIZE)
+			{
+				output.reset();
+				RECYCLED_OUTPUTS.offer(output);
+			}
+		}
+	}
+	
+	private void write(OutputStream output) throws HttpException, IOException
+	{
+		EntityWriter writer = null;
+		try
+		{
+			writer = this.format.createWriter(output, this.serverLink, this.parameters);
+			
+			writer.writeDocumentStart();
+			if (!this.linkOnly)
+				this.entity.writeContent(writer, this.parameters);
+			else
+				writer.writeLink(this.entity.getName(), this.entity);
+			writer.writeDocumentEnd();
+		}
+		finally
+		{
+			if (writer != null)
+				writer.close();
+		}
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class LimitedOutputStream extends FilterOutputStream
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final int maxLength;
+		private int length;
+		private boolean exceeded;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public LimitedOutputStream(OutputStream out, int maxLength)
+		{
+			super(out);
+			
+			this.maxLength = maxLength;
+			this.length = 0;
+			this.exceeded = false;
+		}
+		
+		
+		// IMPLEMENTED METHODS	--------------------
+		
+		@Override
+		public void write(int b) throws IOException
+		{
+			reserve(1);
+			this.out.write(b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			reserve(len);
+			this.out.write(b, off, len);
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		private void reserve(int amount) throws IOException
+		{
+			if (amount > this.maxLength - this.length)
+			{
+				this.exceeded = true;
+				throw new IOException("The document is longer than " + this.maxLength + 
+						" bytes");
+			}
+			this.length += amount;
+		}
+	}
+}
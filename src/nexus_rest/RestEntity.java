@@ -2,16 +2,18 @@ package nexus_rest;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import com.fasterxml.jackson.core.JsonGenerator;
-
 import nexus_http.HttpException;
 import flow_io.XMLIOAccessor;
 import flow_recording.Constructable;
@@ -21,6 +23,11 @@ import flow_structure.TreeNode;
 /**
  * This class represents a resource used in a REST environment. The resources are in a 
  * tree-like structure and may contain links to another resources.
+ * <p>
+ * The links and children of an entity are published as an immutable snapshot that is 
+ * replaced whenever the entity is modified. The entities can therefore be read by multiple 
+ * threads without locking, while a single thread modifies them. A reader sees each entity 
+ * in a consistent state, but the snapshots of separate entities are not coordinated.
  * 
  * @author Mikko Hilpinen
  * @since 31.12.2014
@@ -31,9 +38,16 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	// ATTRIBUTES	--------------------------------
 
 	private String name, id;
-	private Map<String, RestEntity> links;
+	private volatile EntityState state;
+	private volatile RestEntity parentEntity;
+	private volatile CachedPath cachedPath;
+	private volatile Map<String, RestEntity> childIndex;
+	private volatile long version;
+	private List<RestEntityModificationListener> modificationListeners;
+	private Map<String, List<RestEntity>> duplicateChildren;
 	
 	private static final String CHILDINDICATOR = "child";
+	private static final AtomicLong VERSIONS = new AtomicLong();
 	
 	
 	// CONSTRUCTOR	--------------------------------
@@ -49,8 +63,22 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 		super(content, parent);
 		
 		this.name = name;
-		this.links = new HashMap<>();
 		this.id = this.name;
+		this.parentEntity = parent;
+		this.modificationListeners = new ArrayList<>();
+		this.version = VERSIONS.incrementAndGet();
+		
+		// Children may have been added while the entity was being constructed
+		if (this.state == null)
+			this.state = EntityState.EMPTY;
+		
+		// The name wasn't available when the entity was first added to the parent, so the 
+		// parent's index is updated here. Adding a child also modifies the parent.
+		if (parent != null)
+		{
+			parent.indexChild(this);
+			parent.informModification();
+		}
 	}
 	
 	
@@ -115,6 +143,7 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	public void setAttribute(String attributeName, String attributeValue)
 	{
 		getContent().setAttribute(attributeName, attributeValue);
+		informModification();
 	}
 
 	@Override
@@ -131,7 +160,46 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 		if (linkName.startsWith(CHILDINDICATOR))
 			addChild(target);
 		else
-			this.links.put(linkName, target);
+			this.state = getState().withLink(linkName, target);
+		
+		informModification();
+	}
+
+	@Override
+	public void addChild(TreeNode<RestData> child)
+	{
+		super.addChild(child);
+		indexChild(child);
+		updateVersion();
+	}
+	
+	@Override
+	public void removeChild(TreeNode<RestData> child)
+	{
+		super.removeChild(child);
+		unindexChild(child);
+		updateVersion();
+	}
+	
+	@Override
+	public void setParent(TreeNode<RestData> parent)
+	{
+		TreeNode<RestData> previousParent = getParent();
+		super.setParent(parent);
+		
+		if (parent instanceof RestEntity)
+			this.parentEntity = (RestEntity) parent;
+		else
+			this.parentEntity = null;
+		
+		// Keeps the child indices of both parents up to date
+		if (previousParent != parent && previousParent instanceof RestEntity)
+			((RestEntity) previousParent).unindexChild(this);
+		if (parent instanceof RestEntity)
+			((RestEntity) parent).indexChild(this);
+		
+		// The link to the entity changes with the parent
+		updateVersion();
 	}
 
 	@Override
@@ -144,13 +212,11 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	public Map<String, Writable> getLinks()
 	{
 		Map<String, Writable> links = new HashMap<>();
+		EntityState state = getState();
 		
-		for (String linkName : getlinkNames())
-		{
-			links.put(linkName, getLinkedEntity(linkName));
-		}
+		links.putAll(state.links);
 		
-		for (RestEntity child : getChildren())
+		for (RestEntity child : state.getChildren())
 		{
 			links.put(CHILDINDICATOR + child.getName(), child);
 		}
@@ -209,7 +275,90 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 			child.delete(parameters);
 		}
 		
+		informModification();
+		RestEntity parent = this.parentEntity;
 		setParent(null);
+		
+		// The parent is informed only after the entity has been removed so that no one can 
+		// see the entity after the modification has been informed
+		if (parent != null)
+			parent.informModification();
+	}
+	
+	/**
+	 * Adds a new listener that will be informed about the modifications made to this entity 
+	 * and the entities under it
+	 * @param listener The listener that will be informed
+	 */
+	public void addModificationListener(RestEntityModificationListener listener)
+	{
+		if (listener != null && !this.modificationListeners.contains(listener))
+			this.modificationListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a listener from the informed listeners
+	 * @param listener The listener that will no longer be informed
+	 */
+	public void removeModificationListener(RestEntityModificationListener listener)
+	{
+		this.modificationListeners.remove(listener);
+	}
+	
+	/**
+	 * Informs the modification listeners of this entity and the entities above it that 
+	 * this entity has been modified. The subclasses should call this method whenever they 
+	 * change their content without using the methods provided by this class.
+	 */
+	protected void informModification()
+	{
+		updateVersion();
+		
+		RestEntity entity = this;
+		while (entity != null)
+		{
+			for (RestEntityModificationListener listener : entity.modificationListeners)
+			{
+				listener.onRestEntityModified(this);
+			}
+			entity = (RestEntity) entity.getParent();
+		}
+	}
+	
+	/**
+	 * Tells which version of the entity's content is current. The version must change 
+	 * whenever the written content changes, since the clients use it for telling whether 
+	 * their copy is still up to date. By default the versions aren't tracked. The 
+	 * subclasses whose content only changes through the methods of this class may return 
+	 * {@link #getTrackedVersion()} instead.
+	 * @return The current version of the entity's content. Negative if the version can't 
+	 * be tracked.
+	 */
+	public long getVersion()
+	{
+		return -1;
+	}
+	
+	/**
+	 * Returns the version of the entity's content, as far as this class can track it. A 
+	 * new version is taken whenever the entity is modified (see 
+	 * {@link #informModification()}) or its children change. The versions are unique 
+	 * among all the entities, so an entity that replaces another one never has the same 
+	 * version. Reading the version is cheap.<br> 
+	 * The content written through {@link #getMissingEntities(Map)} isn't tracked. Neither 
+	 * are the paths of the linked entities, which change when they are moved, so entities 
+	 * that link to other entities than their children don't have a tracked version.
+	 * @return The current version of the entity's content. Negative if the entity links to 
+	 * other entities than its children.
+	 */
+	protected final long getTrackedVersion()
+	{
+		// The version is read first so that a link added in between is always noticed
+		long version = this.version;
+		if (!getState().links.isEmpty())
+			return -1;
+		
+		return version;
 	}
 	
 	/**
@@ -217,7 +366,7 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	 */
 	public Set<String> getlinkNames()
 	{
-		return this.links.keySet();
+		return getState().links.keySet();
 	}
 	
 	/**
@@ -227,7 +376,7 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	 */
 	public RestEntity getLinkedEntity(String linkName)
 	{
-		return this.links.get(linkName);
+		return getState().links.get(linkName);
 	}
 	
 	/**
@@ -237,9 +386,8 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	{
 		List<RestEntity> targets = new ArrayList<>();
 		
-		for (String linkName : getlinkNames())
+		for (RestEntity target : getState().links.values())
 		{
-			RestEntity target = getLinkedEntity(linkName);
 			if (!targets.contains(target))
 				targets.add(target);
 		}
@@ -252,11 +400,22 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	 */
 	public String getPath()
 	{
-		// TODO: Make a separate directory separator attribute somewhere
-		if (getParent() == null)
+		RestEntity parent = this.parentEntity;
+		if (parent == null)
 			return getName();
-		else
-			return ((RestEntity) getParent()).getPath() + "/" + getName();
+		
+		// The path is only rebuilt when the entity has been moved or the parent's path has 
+		// changed. The check is done against the parent's path so that a path built while 
+		// the entity was being moved is never used afterwards.
+		String parentPath = parent.getPath();
+		CachedPath cached = this.cachedPath;
+		if (cached != null && cached.parent == parent && cached.parentPath == parentPath)
+			return cached.path;
+		
+		// TODO: Make a separate directory separator attribute somewhere
+		String path = parentPath + "/" + getName();
+		this.cachedPath = new CachedPath(parent, parentPath, path);
+		return path;
 	}
 	
 	/**
@@ -274,15 +433,14 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 			return getAllEntities(parameters);
 		
 		// The entity may be a direct link
-		if (this.links.containsKey(pathPart))
-			return getLinkedEntity(pathPart);
+		RestEntity linked = getLinkedEntity(pathPart);
+		if (linked != null)
+			return linked;
 		
 		// Or a child entity
-		for (RestEntity child : getChildren())
-		{
-			if (child.getName().equals(pathPart))
-				return child;
-		}
+		RestEntity child = findChild(pathPart);
+		if (child != null)
+			return child;
 		
 		// Or a single attribute
 		if (getContent().getAttributes().containsKey(pathPart))
@@ -324,85 +482,65 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	}
 	
 	/**
-	 * Writes the entity content as xml data
-	 * @param serverLink The server part of the link, containing the server address, the port 
-	 * number and the first "/"
-	 * @param xmlWriter The writer that writes xml (only required if contentType is xml)
-	 * @param jsonWriter The writer that writes json (only required if contentType is json)
-	 * @param contentType In which form the entity's content should be written
+	 * This method is called before the entity's content is written to the client. The 
+	 * content is written only after the response has been started, so all problems caused 
+	 * by the request (like invalid parameters) should be found here instead. By default, 
+	 * nothing is done.
+	 * @param parameters The parameters provided by the client
+	 * @throws HttpException If the content can't be written with the given parameters
+	 */
+	public void prepareContent(Map<String, String> parameters) throws HttpException
+	{
+		// No preparation required by default
+	}
+	
+	/**
+	 * Writes the entity content. The same content is written in every format, the writer 
+	 * decides how it is represented.
+	 * @param writer The writer that writes the document in the requested format
 	 * @param parameters The parameters provided by the client. "linkType" parameter affects 
 	 * how the links will be written. "noContent=true" makes it so that the entity won't be 
 	 * written at all
-	 * @throws XMLStreamException If the writing failed
 	 * @throws HttpException If there was another problem during the write
-	 * @throws IOException If the json data couldn't be written
+	 * @throws IOException If the content couldn't be written
 	 */
-	public void writeContent(String serverLink, XMLStreamWriter xmlWriter, 
-			JsonGenerator jsonWriter, ContentType contentType, Map<String, String> parameters) 
-			throws XMLStreamException, HttpException, IOException
+	public void writeContent(EntityWriter writer, Map<String, String> parameters) 
+			throws HttpException, IOException
 	{
 		// If the parameter 'noContent' is present, doesn't write anything
 		if (parameters.containsKey("noContent") && 
 				Boolean.parseBoolean(parameters.get("noContent")))
 			return;
 		
-		// Writes the entity element
-		if (contentType == ContentType.XML)
-		{
-			xmlWriter.writeStartElement(getValidXmlName());
-			writeLinkAsAttribute(serverLink, xmlWriter, parameters);
-		}
-		else
-			jsonWriter.writeObjectFieldStart(getName());
+		writer.writeEntityStart(this);
 		
-		// Writes the links
-		for (String link : getlinkNames())
+		// Writes the links and the children from the same snapshot
+		EntityState state = getState();
+		for (Map.Entry<String, RestEntity> link : state.links.entrySet())
 		{
-			if (contentType == ContentType.XML)
-				writeEntityLink(link, getLinkedEntity(link), serverLink, xmlWriter, 
-						parameters);
-			else
-				writeEntityLink(link, getLinkedEntity(link), serverLink, jsonWriter);
+			writer.writeLink(link.getKey(), link.getValue());
 		}
-		// Writes the children
-		for (RestEntity child : getChildren())
+		for (RestEntity child : state.getChildren())
 		{
-			if (contentType == ContentType.XML)
-				writeEntityLink(child.getValidXmlName(), child, serverLink, xmlWriter, 
-						parameters);
-			else
-				writeEntityLink(child.getName(), child, serverLink, jsonWriter);
+			writer.writeLink(child.getName(), child);
 		}
 		// Writes the attributes
-		Map<String, String> attributes = getAttributes();
-		for (String attributeName : attributes.keySet())
+		for (Map.Entry<String, String> attribute : getAttributes().entrySet())
 		{
-			if (contentType == ContentType.XML)
-				XMLIOAccessor.writeElementWithData(attributeName, 
-						attributes.get(attributeName), xmlWriter);
-			else
-				jsonWriter.writeStringField(attributeName, attributes.get(attributeName));
+			writer.writeAttribute(attribute.getKey(), attribute.getValue());
 		}
 		
 		// Writes the missing entities
 		Map<String, RestEntity> missingEntities = getMissingEntities(new HashMap<>());
 		if (missingEntities != null)
 		{
-			for (String entityName : missingEntities.keySet())
+			for (Map.Entry<String, RestEntity> entity : missingEntities.entrySet())
 			{
-				if (contentType == ContentType.XML)
-					writeEntityLink(getValidXmlElementName(entityName), 
-							missingEntities.get(entityName), serverLink, xmlWriter, parameters);
-				else
-					writeEntityLink(entityName, missingEntities.get(entityName), serverLink, 
-							jsonWriter);
+				writer.writeLink(entity.getKey(), entity.getValue());
 			}
 		}
 		
-		if (contentType == ContentType.XML)
-			xmlWriter.writeEndElement();
-		else
-			jsonWriter.writeEndObject();
+		writer.writeEntityEnd();
 	}
 	
 	/**
@@ -431,16 +569,25 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	}
 	
 	/**
-	 * @return List containing all the children of this entity
+	 * @return List containing all the children of this entity. The list is a snapshot that 
+	 * can't be modified and won't change when children are added or removed.
 	 */
 	protected List<RestEntity> getChildren()
 	{
-		List<RestEntity> children = new ArrayList<>();
-		for (int i = 0; i < getChildAmount(); i++)
-		{
-			children.add((RestEntity) getChild(i));
-		}
-		return children;
+		return getState().getChildren();
+	}
+	
+	/**
+	 * Finds a child of this entity
+	 * @param childName The name of the child
+	 * @return The child entity with the given name or null if there is no such child. If 
+	 * there are multiple children with the same name, the one added first is returned.
+	 */
+	protected RestEntity findChild(String childName)
+	{
+		if (this.childIndex == null)
+			return null;
+		return this.childIndex.get(childName);
 	}
 	
 	/**
@@ -463,9 +610,11 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 	private RestEntityList getAllEntities(Map<String, String> parameters) throws 
 			HttpException
 	{
-		RestEntityList entities = new SimpleRestEntityList("*", this, getLinkedEntities());
+		EntityState state = getState();
+		RestEntityList entities = new SimpleRestEntityList("*", this, 
+				new ArrayList<>(state.links.values()));
 		
-		for (RestEntity child : getChildren())
+		for (RestEntity child : state.getChildren())
 		{
 			entities.addEntity(child);
 		}
@@ -482,38 +631,89 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 		return entities;
 	}
 	
-	/**
-	 * Writes a link to an entity in xml
-	 * @param linkName The name of the link
-	 * @param entity The entity being linked to
-	 * @param serverLink The server part of the link
-	 * @param writer The writer that will write the link
-	 * @param parameters The parameters provided by the client
-	 * @throws XMLStreamException If the write failed
-	 */
-	protected static void writeEntityLink(String linkName, RestEntity entity, String serverLink, 
-			XMLStreamWriter writer, Map<String, String> parameters) throws XMLStreamException
+	private void updateVersion()
 	{
-		writer.writeStartElement(linkName);
-		entity.writeLinkAsAttribute(serverLink, writer, parameters);
-		writer.writeEndElement();
+		this.version = VERSIONS.incrementAndGet();
 	}
 	
-	/**
-	 * Writes a link to an entity in json
-	 * @param linkName The name of the link
-	 * @param entity The entity being linked to
-	 * @param serverLink The server part of the link
-	 * @param writer The writer that will write the link
-	 * @throws IOException If the write failed
-	 */
-	protected static void writeEntityLink(String linkName, RestEntity entity, String serverLink, 
-			JsonGenerator writer) throws IOException
+	private EntityState getState()
 	{
-		writer.writeStringField(linkName, serverLink + entity.getPath());
+		// The state is missing only while the entity is being constructed
+		EntityState state = this.state;
+		if (state == null)
+			return EntityState.EMPTY;
+		return state;
 	}
 	
-	private static String getValidXmlElementName(String elementName)
+	private void indexChild(TreeNode<RestData> child)
+	{
+		// The child may not have its name yet if it's still being constructed
+		if (!(child instanceof RestEntity) || child.getParent() != this)
+			return;
+		RestEntity entity = (RestEntity) child;
+		if (entity.getName() == null)
+			return;
+		
+		// The index is created only when necessary since the entity may get children 
+		// before its own construction has finished
+		if (this.childIndex == null)
+			this.childIndex = new ConcurrentHashMap<>();
+		
+		RestEntity indexed = this.childIndex.get(entity.getName());
+		if (indexed == entity)
+			return;
+		else if (indexed == null)
+			this.childIndex.put(entity.getName(), entity);
+		else
+		{
+			// Children with a duplicate name are kept aside in case the first one is removed
+			if (this.duplicateChildren == null)
+				this.duplicateChildren = new HashMap<>();
+			List<RestEntity> duplicates = this.duplicateChildren.get(entity.getName());
+			if (duplicates == null)
+			{
+				duplicates = new ArrayList<>();
+				this.duplicateChildren.put(entity.getName(), duplicates);
+			}
+			if (duplicates.contains(entity))
+				return;
+			duplicates.add(entity);
+		}
+		
+		this.state = getState().withChild(entity);
+	}
+	
+	private void unindexChild(TreeNode<RestData> child)
+	{
+		if (this.childIndex == null || !(child instanceof RestEntity) || 
+				child.getParent() == this)
+			return;
+		RestEntity entity = (RestEntity) child;
+		if (entity.getName() == null)
+			return;
+		
+		List<RestEntity> duplicates = null;
+		if (this.duplicateChildren != null)
+			duplicates = this.duplicateChildren.get(entity.getName());
+		
+		if (this.childIndex.get(entity.getName()) == entity)
+		{
+			// If there are other children with the same name, the next one takes the place
+			if (duplicates == null)
+				this.childIndex.remove(entity.getName());
+			else
+				this.childIndex.put(entity.getName(), duplicates.remove(0));
+		}
+		else if (duplicates == null || !duplicates.remove(entity))
+			return;
+		
+		if (duplicates != null && duplicates.isEmpty())
+			this.duplicateChildren.remove(entity.getName());
+		
+		this.state = getState().withoutChild(entity);
+	}
+	
+	static String getValidXmlElementName(String elementName)
 	{
 		if (elementName == null)
 			return "null";
@@ -522,4 +722,101 @@ public abstract class RestEntity extends TreeNode<RestData> implements
 		
 		return elementName;
 	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	/**
+	 * EntityState is an immutable snapshot of an entity's links and children. A modification 
+	 * creates a new state that shares as much as possible with the previous one.
+	 */
+	private static class EntityState
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private static final EntityState EMPTY = new EntityState(
+				Collections.<String, RestEntity>emptyMap(), new RestEntity[0], 0);
+		
+		private final Map<String, RestEntity> links;
+		// The array may be shared with newer states, but only the first childAmount 
+		// children belong to this state and they never change
+		private final RestEntity[] children;
+		private final int childAmount;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		private EntityState(Map<String, RestEntity> links, RestEntity[] children, 
+				int childAmount)
+		{
+			this.links = links;
+			this.children = children;
+			this.childAmount = childAmount;
+		}
+		
+		
+		// OTHER METHODS	------------------------
+		
+		public List<RestEntity> getChildren()
+		{
+			return Collections.unmodifiableList(
+					Arrays.asList(this.children).subList(0, this.childAmount));
+		}
+		
+		public EntityState withLink(String linkName, RestEntity target)
+		{
+			Map<String, RestEntity> links = new HashMap<>(this.links);
+			links.put(linkName, target);
+			return new EntityState(Collections.unmodifiableMap(links), this.children, 
+					this.childAmount);
+		}
+		
+		public EntityState withChild(RestEntity child)
+		{
+			// Only the latest state is ever added to, so the free space in the array can be 
+			// used without copying
+			RestEntity[] children = this.children;
+			if (this.childAmount == children.length)
+				children = Arrays.copyOf(children, Math.max(4, children.length * 2));
+			children[this.childAmount] = child;
+			
+			return new EntityState(this.links, children, this.childAmount + 1);
+		}
+		
+		public EntityState withoutChild(RestEntity child)
+		{
+			for (int i = 0; i < this.childAmount; i++)
+			{
+				if (this.children[i] == child)
+				{
+					// The older states may still be read, so a new array is required
+					RestEntity[] children = new RestEntity[this.children.length];
+					System.arraycopy(this.children, 0, children, 0, i);
+					System.arraycopy(this.children, i + 1, children, i, 
+							this.childAmount - i - 1);
+					return new EntityState(this.links, children, this.childAmount - 1);
+				}
+			}
+			
+			return this;
+		}
+	}
+	
+	private static class CachedPath
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final RestEntity parent;
+		private final String parentPath, path;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public CachedPath(RestEntity parent, String parentPath, String path)
+		{
+			this.parent = parent;
+			this.parentPath = parentPath;
+			this.path = path;
+		}
+	}
 }
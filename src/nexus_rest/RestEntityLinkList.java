@@ -4,11 +4,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
-
-import com.fasterxml.jackson.core.JsonGenerator;
-
 import nexus_http.HttpException;
 import nexus_http.MethodNotSupportedException;
 import nexus_http.MethodType;
@@ -57,13 +52,13 @@ public abstract class RestEntityLinkList extends RestEntityList
 		try
 		{
 			int index = Integer.parseInt(pathPart);
-			if (index >= 0 && index < getEntities().size())
-				return getEntities().get(index);
+			if (index >= 0 && index < getTrimmedEntities().size())
+				return getTrimmedEntities().get(index);
 		}
 		catch (NumberFormatException e)
 		{
 			// Otherwise expects the path part to be a name of a linked entity
-			for (RestEntity entity : getEntities())
+			for (RestEntity entity : getTrimmedEntities())
 			{
 				if (entity.getName().equals(pathPart))
 					return entity;
@@ -86,7 +81,7 @@ public abstract class RestEntityLinkList extends RestEntityList
 	{
 		// Returns all the entities behind the links
 		Map<String, RestEntity> entities = new HashMap<>();
-		for (RestEntity entity : getEntities())
+		for (RestEntity entity : getTrimmedEntities())
 		{
 			entities.put(entity.getName(), entity);
 		}
@@ -95,20 +90,15 @@ public abstract class RestEntityLinkList extends RestEntityList
 	}
 	
 	@Override
-	public void writeContent(String serverLink, XMLStreamWriter xmlWriter, 
-			JsonGenerator jsonWriter, ContentType contentType, Map<String, String> parameters) 
-			throws XMLStreamException, HttpException, IOException
+	public void writeContent(EntityWriter writer, Map<String, String> parameters) 
+			throws HttpException, IOException
 	{
 		trimIfNecessary(parameters);
 		
 		// Writes a link to each entity in the list
-		for (RestEntity entity : getEntities())
+		for (RestEntity entity : getTrimmedEntities())
 		{
-			if (contentType == ContentType.XML)
-				writeEntityLink(entity.getValidXmlName(), entity, serverLink, xmlWriter, 
-						parameters);
-			else
-				writeEntityLink(entity.getName(), entity, serverLink, jsonWriter);
+			writer.writeLink(entity.getName(), entity);
 		}
 	}
 }
@@ -6,11 +6,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
-
-import com.fasterxml.jackson.core.JsonGenerator;
-
 import nexus_http.HttpException;
 import nexus_http.InvalidParametersException;
 import nexus_http.MethodNotSupportedException;
@@ -28,7 +23,7 @@ public abstract class RestEntityList extends TemporaryRestEntity
 {
 	// ATTRIBUTES	--------------------------
 	
-	private boolean trimmed;
+	private List<RestEntity> page;
 	
 	
 	// CONSTRUCTOR	--------------------------
@@ -43,7 +38,7 @@ public abstract class RestEntityList extends TemporaryRestEntity
 	{
 		super(name, new SimpleRestData(), parent);
 		
-		this.trimmed = false;
+		this.page = null;
 	}
 	
 	
@@ -76,7 +71,7 @@ public abstract class RestEntityList extends TemporaryRestEntity
 		// entities in the current list
 		List<RestEntity> found = new ArrayList<>();
 		
-		for (RestEntity entity : getEntities())
+		for (RestEntity entity : getTrimmedEntities())
 		{
 			try
 			{
@@ -103,7 +98,7 @@ public abstract class RestEntityList extends TemporaryRestEntity
 		
 		// By default, Deletes all the entities in the list
 		int successes = 0;
-		for (RestEntity entity : getEntities())
+		for (RestEntity entity : getTrimmedEntities())
 		{
 			try
 			{
@@ -116,7 +111,7 @@ public abstract class RestEntityList extends TemporaryRestEntity
 			}
 		}
 		
-		if (!getEntities().isEmpty() && successes == 0)
+		if (!getTrimmedEntities().isEmpty() && successes == 0)
 			throw new MethodNotSupportedException(MethodType.DELETE);
 	}
 	
@@ -131,22 +126,49 @@ public abstract class RestEntityList extends TemporaryRestEntity
 	}
 	
 	@Override
-	public void writeContent(String serverLink, XMLStreamWriter xmlWriter, 
-			JsonGenerator jsonWriter, ContentType contentType, Map<String, String> parameters) 
-			throws XMLStreamException, HttpException, IOException
+	public void prepareContent(Map<String, String> parameters) throws HttpException
+	{
+		// The parameters are checked before anything is written
+		trimIfNecessary(parameters);
+	}
+	
+	@Override
+	public void writeContent(EntityWriter writer, Map<String, String> parameters) 
+			throws HttpException, IOException
 	{
 		trimIfNecessary(parameters);
 		
 		// Writes the content of each entity in row
-		for (RestEntity entity : getEntities())
+		for (RestEntity entity : getTrimmedEntities())
 		{
-			entity.writeContent(serverLink, xmlWriter, jsonWriter, contentType, parameters);
+			entity.writeContent(writer, parameters);
 		}
 	}
 	
 	
 	// OTHER METHODS	------------------------
 	
+	/**
+	 * Returns a part of the entities in this list. By default, a view of the list returned 
+	 * by getEntities() is returned. The subclasses that read their entities from another 
+	 * source should override this method so that only the requested entities are read.
+	 * @param from The index of the first returned entity (>= 0)
+	 * @param amount How many entities should be returned at maximum (>= 0)
+	 * @param parameters The parameters provided by the client. These may contain other 
+	 * paging information (like a cursor) the subclass understands.
+	 * @return The requested part of the entities
+	 * @throws HttpException If the entities couldn't be retrieved
+	 */
+	protected List<RestEntity> getEntities(int from, int amount, 
+			Map<String, String> parameters) throws HttpException
+	{
+		List<RestEntity> entities = getEntities();
+		int start = Math.min(from, entities.size());
+		int end = (int) Math.min((long) start + amount, entities.size());
+		
+		return entities.subList(start, end);
+	}
+	
 	/**
 	 * Adds a new entity to the list
 	 * @param entity The entity that will be added to the list
@@ -155,7 +177,10 @@ public abstract class RestEntityList extends TemporaryRestEntity
 	public void addEntity(RestEntity entity) throws HttpException
 	{
 		if (entity != null && !getEntities().contains(entity))
+		{
 			getEntities().add(entity);
+			this.page = null;
+		}
 	}
 	
 	/**
@@ -165,69 +190,53 @@ public abstract class RestEntityList extends TemporaryRestEntity
 	 */
 	public void remove(RestEntity entity) throws HttpException
 	{
-		getEntities().remove(entity);
+		if (getEntities().remove(entity))
+			this.page = null;
 	}
 	
 	/**
-	 * Trims the entity list if it hasn't been already
-	 * @param parameters
-	 * @throws HttpException
-	 */
-	protected void trimIfNecessary(Map<String, String> parameters) throws HttpException
-	{
-		if (!this.trimmed)
-		{
-			trim(parameters);
-			adjustSizeWithParameters(parameters);
-			this.trimmed = true;
-		}
-	}
-	
-	/**
-	 * Drops a certain amount of entities from the beginning of the list
-	 * @param amount
-	 * @throws HttpException If the operation couldn't be completed
+	 * @return The entities in this list after the list has been trimmed according to the 
+	 * client's parameters. If the list hasn't been trimmed yet, all of the entities are 
+	 * returned.
+	 * @throws HttpException If the entities couldn't be retrieved
 	 */
-	private void dropFirst(int amount) throws HttpException
+	protected List<RestEntity> getTrimmedEntities() throws HttpException
 	{
-		int dropped = 0;
-		while (dropped < amount && !getEntities().isEmpty())
-		{
-			getEntities().remove(0);
-			dropped ++;
-		}
+		if (this.page == null)
+			return getEntities();
+		return this.page;
 	}
 	
 	/**
-	 * Removes the entities from the end of the list until it fits the given size
-	 * @param size How many entities the list should hold in the end (at maximum)
-	 * @throws HttpException If the operation couldn't be completed
+	 * Trims the entity list if it hasn't been already. The entities themselves are left 
+	 * untouched but only the requested part of them is used afterwards. Adding or removing 
+	 * entities makes it necessary to trim the list again.
+	 * @param parameters The parameters provided by the client. 'from' and 'amount' define 
+	 * which part of the list is used.
+	 * @throws HttpException If the parameters were invalid or the entities couldn't be 
+	 * retrieved
 	 */
-	private void fitToSize(int size) throws HttpException
+	protected void trimIfNecessary(Map<String, String> parameters) throws HttpException
 	{
-		if (size <= 0)
+		if (this.page == null)
 		{
-			getEntities().clear();
-			return;
-		}
-		
-		while(getEntities().size() > size)
-		{
-			getEntities().remove(getEntities().size() - 1);
+			trim(parameters);
+			this.page = getEntitiesWithParameters(parameters);
 		}
 	}
 	
 	/**
-	 * Updates the size of the list to match the user's desires. The method supports 
-	 * parameters 'from' and 'amount'. The list should be sorted before calling this method.
-	 * @param parameters The parameters that define the new size of the list
+	 * Finds the part of the list the user wants. The method supports parameters 'from' and 
+	 * 'amount'. The list should be sorted before calling this method.
+	 * @param parameters The parameters that define the returned part of the list
+	 * @return The requested part of the list
 	 * @throws InvalidParametersException If the parameters couldn't be parsed
 	 */
-	private void adjustSizeWithParameters(Map<String, String> parameters) throws 
-			HttpException
+	private List<RestEntity> getEntitiesWithParameters(Map<String, String> parameters) 
+			throws HttpException
 	{
 		int from = 0;
-		int amount = getEntities().size();
+		int amount = Integer.MAX_VALUE;
 		
 		try
 		{
@@ -241,7 +250,6 @@ public abstract class RestEntityList extends TemporaryRestEntity
 			throw new InvalidParametersException("Could not parse the given parameters");
 		}
 		
-		dropFirst(from);
-		fitToSize(amount);
+		return getEntities(Math.max(0, from), Math.max(0, amount), parameters);
 	}
 }
@@ -0,0 +1,19 @@
+package nexus_rest;
+
+/**
+ * RestEntityModificationListeners are informed whenever an entity they listen to, or any 
+ * entity under it, is modified.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public interface RestEntityModificationListener
+{
+	/**
+	 * This method is called after an entity has been modified. Links and children being 
+	 * added or removed count as modifications as well as attribute changes. The method is 
+	 * also called right before an entity is deleted.
+	 * @param entity The entity that was modified
+	 */
+	public void onRestEntityModified(RestEntity entity);
+}
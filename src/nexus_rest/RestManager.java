@@ -1,35 +1,56 @@
 package nexus_rest;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
-
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.protocol.HttpContext;
 
-import tempest_io.JsonIOAccessor;
-
-import com.fasterxml.jackson.core.JsonGenerator;
-
-import flow_io.XMLIOAccessor;
 import nexus_event.HttpEvent;
 import nexus_event.HttpEvent.HttpEventType;
 import nexus_event.HttpEventListenerHandler;
 import nexus_http.HttpException;
 import nexus_http.InternalServerException;
+import nexus_http.MethodType;
 import nexus_http.Request;
 import nexus_http.RequestHandler;
+import nexus_http.RequestRouter;
+import nexus_http.ResponseCompressor;
 import nexus_http.ResponseReplicate;
+import nexus_http.SharedByteArrayEntity;
 
 /**
- * RestManager keeps track of restEntities and handles incoming requests
+ * RestManager keeps track of restEntities and handles incoming requests. The requests may 
+ * be handled concurrently. GET requests read the entity snapshots without locking while 
+ * POST, PUT and DELETE requests are handled one at a time. Modifications made to the tree 
+ * outside the manager should hold the tree's write lock as well.
+ * <p>
+ * The responses to GET requests for entities that track their versions carry a weak 
+ * entity tag (ETag) based on the version (see {@link RestEntity#getVersion()}). If the 
+ * client already has the current version (If-None-Match), the manager answers with 304 
+ * without writing the content. Simple and immutable entities track their versions, other 
+ * entities only do so if they choose to.
+ * <p>
+ * The format of the responses is chosen from the Accept header of the request, using the 
+ * quality values. The "contentType" parameter overrides the header. New formats can be 
+ * added with {@link #addFormat(EntityWriterFactory)}.
+ * <p>
+ * Documents up to 64 kB are written before the response is started, so that the errors 
+ * found while writing them (in {@link RestEntity#getMissingEntities(Map)}, for example) 
+ * are sent with the proper status. Longer documents are streamed to the client, in which 
+ * case such an error can only cut the response short.
  * 
  * @author Mikko Hilpinen
  * @since 19.1.2015
@@ -42,7 +63,16 @@ public class RestManager implements RequestHandler
 	private String serverLink;
 	private boolean useEncoding;
 	private HttpEventListenerHandler listenerHandler;
-	private ContentType defaultContentType;
+	private EntityWriterFactory defaultFormat;
+	private List<EntityWriterFactory> formats;
+	private RestResponseCache responseCache;
+	private ResponseCompressor compressor;
+	private ReadWriteLock treeLock;
+	
+	// The entity versions start from zero each time the program starts, so the tags 
+	// contain the start time as well
+	private static final String ETAG_EPOCH = Long.toHexString(System.currentTimeMillis());
+	private static final int MAX_BUFFERED_DOCUMENT_LENGTH = 64 * 1024;
 	
 	
 	// CONSTRUCTOR	--------------------------------
@@ -55,7 +85,8 @@ public class RestManager implements RequestHandler
 	 * @param useEncoding Should the manager expect to receive encoded requests. 
 	 * The used encoding is UTF-8.
 	 * @param defaultContentType The used content type in the case where the client doesn't 
-	 * specify their wish
+	 * specify their wish. All the content types are available to the clients that ask for 
+	 * them.
 	 */
 	public RestManager(RestEntity root, String serverLink, boolean useEncoding, 
 			ContentType defaultContentType)
@@ -64,7 +95,11 @@ public class RestManager implements RequestHandler
 		this.serverLink = serverLink;
 		this.useEncoding = useEncoding;
 		this.listenerHandler = new HttpEventListenerHandler(false);
-		this.defaultContentType = defaultContentType;
+		this.defaultFormat = defaultContentType;
+		this.formats = new CopyOnWriteArrayList<EntityWriterFactory>(ContentType.values());
+		this.responseCache = null;
+		this.compressor = null;
+		this.treeLock = new ReentrantReadWriteLock();
 	}
 	
 	
@@ -74,97 +109,85 @@ public class RestManager implements RequestHandler
 	public void handle(HttpRequest request, HttpResponse response, HttpContext context)
 			throws org.apache.http.HttpException, IOException
 	{
-		Request parsedRequest = new Request(request, this.useEncoding);
+		// The router has usually split the path already
+		String[] path = RequestRouter.getPath(context);
+		Request parsedRequest;
+		if (path == null)
+			parsedRequest = new Request(request, this.useEncoding);
+		else
+			parsedRequest = new Request(request, path, this.useEncoding);
 		
-		this.listenerHandler.onHttpEvent(new HttpEvent(new Request(parsedRequest), 
-				HttpEventType.RECEIVED));
+		// The parsed request isn't modified afterwards so it doesn't need to be copied
+		this.listenerHandler.onHttpEvent(new HttpEvent(parsedRequest, HttpEventType.RECEIVED));
 		
-		ByteArrayOutputStream output = null;
-		XMLStreamWriter xmlWriter = null;
-		JsonGenerator jsonWriter = null;
-		boolean writerOpen = false;
+		EntityWriterFactory format = selectFormat(request, parsedRequest, response);
 		
-		// TODO: Change this to use headers instead
-		ContentType contentType = ContentType.parseFromString(
-				parsedRequest.getParameters().get("contentType"));
-		if (contentType == null)
-			contentType = this.defaultContentType;
+		// Only the requests that modify the entity tree need to be handled one at a time. 
+		// The others read the entities' current snapshots.
+		Lock lock = getLockFor(parsedRequest.getMethod());
+		if (lock != null)
+			lock.lock();
 		
 		// Finds the requested entity
 		try
 		{	
 			RestEntity requested = this.root.getEntity(parsedRequest.getPath(), 1, 
 					parsedRequest.getParameters());
+			int status = HttpStatus.SC_OK;
 			
 			switch (parsedRequest.getMethod())
 			{
-				// For GET, parses the entity and sends the data
+				// For GET, parses the entity and sends the data. The data is written 
+				// directly to the client once the response is sent.
 				case GET:
-					output = new ByteArrayOutputStream();
-					if (contentType == ContentType.XML)
-						xmlWriter = XMLIOAccessor.createWriter(output);
-					else
-						jsonWriter = JsonIOAccessor.createWriter(output);
-					writerOpen = true;
-					
-					writeDocumentStart(xmlWriter, jsonWriter, contentType);
-					requested.writeContent(this.serverLink, xmlWriter, jsonWriter, contentType, 
-							parsedRequest.getParameters());
-					
-					writeDocumentEnd(xmlWriter, jsonWriter, contentType);
-					
-					XMLIOAccessor.closeWriter(xmlWriter);
-					JsonIOAccessor.closeWriter(jsonWriter);
-					writerOpen = false;
+					requested.prepareContent(parsedRequest.getParameters());
 					
-					response.setEntity(new StringEntity(output.toString(), 
-							contentType.getApacheContentType()));
+					// The client may already have the current version of the content. The 
+					// version is read before the content is written, so the tag never 
+					// claims newer content than was sent.
+					String eTag = createETag(requested, format, parsedRequest.getParameters());
+					if (eTag != null)
+					{
+						response.setHeader("ETag", eTag);
+						if (matchesETag(request, eTag))
+						{
+							status = HttpStatus.SC_NOT_MODIFIED;
+							break;
+						}
+					}
 					
+					if (this.responseCache == null)
+						response.setEntity(getContent(requested, format, 
+								parsedRequest.getParameters(), false));
+					else
+						response.setEntity(getCachedContent(requested, format, 
+								parsedRequest.getParameters()));
 					break;
 				// For POST, posts a new entity, returns a link to the new entity
 				case POST:
-					// TODO: WETWET
 					RestEntity newEntity = requested.Post(parsedRequest.getParameters());
-					
-					output = new ByteArrayOutputStream();
-					if (contentType == ContentType.XML)
-						xmlWriter = XMLIOAccessor.createWriter(output);
-					else
-						jsonWriter = JsonIOAccessor.createWriter(output);
-					writerOpen = true;
-					
-					writeDocumentStart(xmlWriter, jsonWriter, contentType);
-					if (contentType == ContentType.XML)
-						RestEntity.writeEntityLink(newEntity.getValidXmlName(), newEntity, 
-								this.serverLink, xmlWriter, parsedRequest.getParameters());
-					else
-						RestEntity.writeEntityLink(newEntity.getName(), newEntity, 
-								this.serverLink, jsonWriter);
-					writeDocumentEnd(xmlWriter, jsonWriter, contentType);
-					
-					XMLIOAccessor.closeWriter(xmlWriter);
-					JsonIOAccessor.closeWriter(jsonWriter);
-					writerOpen = false;
-					
-					response.setEntity(new StringEntity(output.toString(), 
-							contentType.getApacheContentType()));
-					
+					invalidateCache(requested.getPath());
+					response.setEntity(getContent(newEntity, format, 
+							parsedRequest.getParameters(), true));
 					break;
 				// For PUT, changes an attribute in the entity, returns a link to the 
 				// modified entity
 				case PUT:
 					requested.Put(parsedRequest.getParameters());
+					invalidateCache(requested.getPath());
 					break;
 				// For DELETE, deletes the entity, returns a link to the entity above that
 				case DELETE:
+					String deletedPath = requested.getPath();
 					requested.delete(parsedRequest.getParameters());
+					invalidateCache(deletedPath);
 					break;
 				// TODO: HEAD not working for some reason... (doesn't reach the manager?)
 				// For HEAD, doesn't parse the entity but sends an OK status instead
 				default: break;
 			}
 			
-			response.setStatusCode(HttpStatus.SC_OK);
+			response.setStatusCode(status);
 		}
 		catch(HttpException e)
 		{
@@ -182,21 +205,16 @@ public class RestManager implements RequestHandler
 				System.err.println("Caused by request: " + parsedRequest);
 			}
 		}
-		catch(XMLStreamException | IOException e)
-		{
-			response.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
-			e.printStackTrace();
-		}
 		finally
 		{
-			if (writerOpen)
-			{
-				XMLIOAccessor.closeWriter(xmlWriter);
-				JsonIOAccessor.closeWriter(jsonWriter);
-			}
+			if (lock != null)
+				lock.unlock();
+			informResponseSent(response, parsedRequest);
 			
-			getHttpListenerHandler().onHttpEvent(new HttpEvent(
-					new ResponseReplicate(response), HttpEventType.SENT));
+			// The body is compressed only after the listeners have been informed so that 
+			// they see the original content
+			if (this.compressor != null)
+				this.compressor.compress(request, response);
 		}
 	}
 
@@ -206,7 +224,7 @@ public class RestManager implements RequestHandler
 		if (!this.useEncoding)
 			return "/" + this.root + "/*";
 		else
-			return "/" + encodeIfNecessary(this.root.getName()) + "*";
+			return "/" + encodeIfNecessary(this.root.getName()) + "/*";
 	}
 	
 	
@@ -229,47 +247,327 @@ public class RestManager implements RequestHandler
 		return this.listenerHandler;
 	}
 	
-	private String encodeIfNecessary(String s)
+	/**
+	 * Adds a new format the entities can be written in. The clients can request the format 
+	 * with the Accept header or with the "contentType" parameter. If a format with the same 
+	 * name already exists, it is replaced.
+	 * @param format The format that should be available
+	 */
+	public void addFormat(EntityWriterFactory format)
 	{
-		if (this.useEncoding)
+		for (EntityWriterFactory existing : this.formats)
+		{
+			if (existing.getName().equalsIgnoreCase(format.getName()))
+				this.formats.remove(existing);
+		}
+		this.formats.add(format);
+	}
+	
+	/**
+	 * @return The compressor used for compressing the responses. Null if the responses 
+	 * are not compressed.
+	 */
+	public ResponseCompressor getResponseCompressor()
+	{
+		return this.compressor;
+	}
+	
+	/**
+	 * Changes how the responses are compressed. By default, the responses are not 
+	 * compressed. With a compressor, the responses are compressed when the client accepts 
+	 * it (Accept-Encoding).
+	 * @param compressor The compressor used for compressing the responses. Null if the 
+	 * responses shouldn't be compressed.
+	 */
+	public void setResponseCompressor(ResponseCompressor compressor)
+	{
+		this.compressor = compressor;
+	}
+	
+	/**
+	 * @return The cache that holds the documents sent for GET requests. Null if no cache 
+	 * is used.
+	 */
+	public RestResponseCache getResponseCache()
+	{
+		return this.responseCache;
+	}
+	
+	/**
+	 * Changes the cache used for holding the documents sent for GET requests. By default, 
+	 * no cache is used and each document is written separately. The cache is kept up to 
+	 * date by listening to the modifications of the root entity.
+	 * @param cache The cache that should be used. Null if no documents should be cached.
+	 */
+	public void setResponseCache(RestResponseCache cache)
+	{
+		this.treeLock.writeLock().lock();
+		try
+		{
+			if (this.responseCache != null)
+				this.root.removeModificationListener(this.responseCache);
+			
+			this.responseCache = cache;
+			
+			if (cache != null)
+				this.root.addModificationListener(cache);
+		}
+		finally
+		{
+			this.treeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * The lock that controls the modifications of the entity tree. The write lock is held 
+	 * while the tree is being modified by POST, PUT and DELETE requests. Any other code that 
+	 * modifies the tree while the manager is in use should hold the write lock as well. 
+	 * GET requests don't use the lock since the entities can be read while they are being 
+	 * modified. The read lock can be used for reading multiple entities as a consistent 
+	 * whole.
+	 * @return The lock that controls the access to the entity tree
+	 */
+	public ReadWriteLock getTreeLock()
+	{
+		return this.treeLock;
+	}
+	
+	private Lock getLockFor(MethodType method)
+	{
+		if (method == MethodType.POST || method == MethodType.PUT || 
+				method == MethodType.DELETE)
+			return this.treeLock.writeLock();
+		else
+			return null;
+	}
+	
+	private HttpEntity getContent(RestEntity requested, EntityWriterFactory format, 
+			Map<String, String> parameters, boolean linkOnly) throws HttpException
+	{
+		// Small documents are written before the response is started. If the document turns 
+		// out to be too long, it is written again while the response is being sent.
+		RestContentEntity content = new RestContentEntity(requested, this.serverLink, format, 
+				parameters, linkOnly);
+		byte[] document;
+		try
 		{
+			document = content.toByteArray(MAX_BUFFERED_DOCUMENT_LENGTH);
+		}
+		catch (IOException e)
+		{
+			throw new InternalServerException("Failed to write " + requested.getPath(), e);
+		}
+		
+		if (document == null)
+			return content;
+		return new SharedByteArrayEntity(document, format.getApacheContentType());
+	}
+	
+	private HttpEntity getCachedContent(RestEntity requested, EntityWriterFactory format, 
+			Map<String, String> parameters) throws HttpException
+	{
+		String path = requested.getPath();
+		String key = RestResponseCache.createKey(path, format, parameters);
+		byte[] content = this.responseCache.get(key);
+		
+		// If the document isn't cached yet, writes it
+		if (content == null)
+		{
+			long generation = this.responseCache.getGeneration();
 			try
 			{
-				return URLEncoder.encode(s, "UTF-8");
+				content = new RestContentEntity(requested, this.serverLink, format, 
+						parameters, false).toByteArray();
 			}
-			catch (UnsupportedEncodingException e)
+			catch (IOException e)
 			{
-				System.err.println("Failed to encode the path");
-				e.printStackTrace();
+				throw new InternalServerException("Failed to write " + path, e);
 			}
+			this.responseCache.put(key, path, content, generation);
 		}
 		
-		return s;
+		return new SharedByteArrayEntity(content, format.getApacheContentType());
 	}
 	
-	private static void writeDocumentStart(XMLStreamWriter xmlWriter, 
-			JsonGenerator jsonWriter, ContentType contentType) throws XMLStreamException, 
-			IOException
+	private EntityWriterFactory selectFormat(HttpRequest request, Request parsedRequest, 
+			HttpResponse response)
 	{
-		if (contentType == ContentType.XML)
+		// The "contentType" parameter overrides the Accept header
+		String requestedName = parsedRequest.getParameterValue("contentType");
+		if (requestedName != null)
 		{
-			XMLIOAccessor.writeDocumentStart("result", xmlWriter);
-			XMLIOAccessor.writeXLinkNamespaceIntroduction(xmlWriter);
+			for (EntityWriterFactory format : this.formats)
+			{
+				if (format.getName().equalsIgnoreCase(requestedName))
+					return format;
+			}
 		}
-		else
-			jsonWriter.writeStartObject();
+		
+		// Unless the parameter chose the format, the response depends on the Accept header, 
+		// even when the header is missing. The header is kept on 304 responses as well.
+		response.addHeader("Vary", "Accept");
+		
+		Header[] acceptHeaders = request.getHeaders("Accept");
+		if (acceptHeaders.length == 0)
+			return this.defaultFormat;
+		
+		// The default format is used when the client accepts multiple formats equally, or 
+		// doesn't accept any of them
+		EntityWriterFactory best = this.defaultFormat;
+		double bestQuality = getAcceptedQuality(acceptHeaders, best);
+		for (EntityWriterFactory format : this.formats)
+		{
+			double quality = getAcceptedQuality(acceptHeaders, format);
+			if (quality > bestQuality)
+			{
+				best = format;
+				bestQuality = quality;
+			}
+		}
+		
+		return best;
+	}
+	
+	private void informResponseSent(HttpResponse response, Request parsedRequest)
+	{
+		// The content is only copied when someone listens to the sent responses
+		HttpEvent event = new HttpEvent(new ResponseReplicate(response, false), parsedRequest, 
+				HttpEventType.SENT);
+		if (!this.listenerHandler.hasListenersFor(event))
+			return;
+		
+		// Documents that are too long to be buffered would have to be written again, so the 
+		// listeners only receive the status and the headers in that case
+		HttpEntity entity = response.getEntity();
+		if (entity != null && entity.getContentLength() >= 0)
+			event = new HttpEvent(new ResponseReplicate(response, true), parsedRequest, 
+					HttpEventType.SENT);
+		this.listenerHandler.onHttpEvent(event);
+	}
+	
+	private void invalidateCache(String modifiedPath)
+	{
+		// Some entities (temporary ones for example) don't inform their modifications so 
+		// the cache is updated after each change request as well
+		if (this.responseCache != null)
+			this.responseCache.invalidate(modifiedPath);
+	}
+	
+	private static String createETag(RestEntity entity, EntityWriterFactory format, 
+			Map<String, String> parameters)
+	{
+		long version = entity.getVersion();
+		if (version < 0)
+			return null;
+		
+		// The same version is written differently depending on the content type and the 
+		// output parameters. The tag is weak since the bytes may differ (encoding).
+		int variant = RestResponseCache.createKey("", format, parameters).hashCode();
+		return "W/\"" + ETAG_EPOCH + "-" + Long.toHexString(version) + "-" + 
+				Integer.toHexString(variant) + "\"";
 	}
 	
-	private static void writeDocumentEnd(XMLStreamWriter xmlWriter, 
-			JsonGenerator jsonWriter, ContentType contentType) throws XMLStreamException, 
-			IOException
+	private static double getAcceptedQuality(Header[] acceptHeaders, 
+			EntityWriterFactory format)
 	{
-		if (contentType == ContentType.XML)
+		String mimeType = format.getApacheContentType().getMimeType().toLowerCase();
+		
+		// The most specific media range that matches the type determines the quality
+		double quality = 0;
+		int bestSpecificity = -1;
+		for (Header header : acceptHeaders)
 		{
-			//xmlWriter.writeEndElement();
-			XMLIOAccessor.writeDocumentEnd(xmlWriter);
+			for (String range : header.getValue().split(","))
+			{
+				String name = range;
+				double rangeQuality = 1;
+				int parametersStart = range.indexOf(';');
+				if (parametersStart >= 0)
+				{
+					name = range.substring(0, parametersStart);
+					rangeQuality = parseQuality(range.substring(parametersStart + 1));
+				}
+				name = name.trim().toLowerCase();
+				
+				int specificity;
+				if (name.equals(mimeType))
+					specificity = 2;
+				else if (name.equals("*/*"))
+					specificity = 0;
+				else if (name.endsWith("/*") && mimeType.startsWith(name.substring(0, 
+						name.length() - 1)))
+					specificity = 1;
+				else
+					continue;
+				
+				if (specificity > bestSpecificity)
+				{
+					bestSpecificity = specificity;
+					quality = rangeQuality;
+				}
+			}
 		}
-		else
-			jsonWriter.writeEndObject();
+		
+		return quality;
+	}
+	
+	private static double parseQuality(String parameters)
+	{
+		for (String parameter : parameters.split(";"))
+		{
+			parameter = parameter.trim();
+			if (parameter.startsWith("q="))
+			{
+				try
+				{
+					return Double.parseDouble(parameter.substring(2).trim());
+				}
+				catch (NumberFormatException e)
+				{
+					return 0;
+				}
+			}
+		}
+		
+		return 1;
+	}
+	
+	private static boolean matchesETag(HttpRequest request, String eTag)
+	{
+		// The weak comparison is used, so the "W/" prefix is ignored
+		String opaqueTag = eTag.substring(2);
+		for (Header header : request.getHeaders("If-None-Match"))
+		{
+			for (String tag : header.getValue().split(","))
+			{
+				tag = tag.trim();
+				if (tag.equals("*"))
+					return true;
+				if (tag.startsWith("W/"))
+					tag = tag.substring(2);
+				if (tag.equals(opaqueTag))
+					return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private String encodeIfNecessary(String s)
+	{
+		if (this.useEncoding)
+		{
+			try
+			{
+				return URLEncoder.encode(s, "UTF-8");
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				System.err.println("Failed to encode the path");
+				e.printStackTrace();
+			}
+		}
+		
+		return s;
 	}
 }
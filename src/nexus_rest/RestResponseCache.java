@@ -0,0 +1,252 @@
+package nexus_rest;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RestResponseCache holds the documents written for GET requests so that the same content 
+ * doesn't need to be written over and over again. The cache is limited both in the amount 
+ * of documents and in their total size, the least recently used documents being dropped 
+ * first. The cache listens to the entities it is registered to and drops the documents that 
+ * are affected by a modification. Entities that produce their content dynamically 
+ * (through getMissingEntities, for example) should not be used with a cache.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class RestResponseCache implements RestEntityModificationListener
+{
+	// ATTRIBUTES	--------------------------------
+	
+	/**
+	 * The parameters that affect the written document. The documents are cached separately 
+	 * for each combination of these parameters.
+	 */
+	public static final String[] OUTPUT_PARAMETERS = {"linkType", "noContent", "from", 
+			"amount"};
+	
+	private final int maxEntries;
+	private final long maxBytes;
+	private LinkedHashMap<String, CachedDocument> documents;
+	private long usedBytes, generation, hits, misses;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new cache
+	 * @param maxEntries How many documents can be held in the cache at once
+	 * @param maxBytes How many bytes the documents may take in total
+	 */
+	public RestResponseCache(int maxEntries, long maxBytes)
+	{
+		if (maxEntries <= 0 || maxBytes <= 0)
+			throw new IllegalArgumentException("The cache size must be positive");
+		
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.documents = new LinkedHashMap<>(16, 0.75f, true);
+		this.usedBytes = 0;
+		this.generation = 0;
+		this.hits = 0;
+		this.misses = 0;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void onRestEntityModified(RestEntity entity)
+	{
+		invalidate(entity.getPath());
+	}
+	
+	
+	// GETTERS & SETTERS	------------------------
+	
+	/**
+	 * @return How many times a document was found from the cache
+	 */
+	public synchronized long getHitAmount()
+	{
+		return this.hits;
+	}
+	
+	/**
+	 * @return How many times a document wasn't found from the cache
+	 */
+	public synchronized long getMissAmount()
+	{
+		return this.misses;
+	}
+	
+	/**
+	 * @return How many documents there currently are in the cache
+	 */
+	public synchronized int getSize()
+	{
+		return this.documents.size();
+	}
+	
+	/**
+	 * @return How many bytes the cached documents currently take
+	 */
+	public synchronized long getUsedBytes()
+	{
+		return this.usedBytes;
+	}
+	
+	/**
+	 * The generation changes each time documents are invalidated. A document that was 
+	 * written during a generation that has since passed may be outdated.
+	 * @return The current generation of the cache
+	 */
+	public synchronized long getGeneration()
+	{
+		return this.generation;
+	}
+	
+	
+	// OTHER METHODS	----------------------------
+	
+	/**
+	 * Finds a document from the cache
+	 * @param key The key the document was stored with
+	 * @return The cached document or null if there was no such document in the cache
+	 * @see #createKey(String, EntityWriterFactory, Map)
+	 */
+	public synchronized byte[] get(String key)
+	{
+		CachedDocument document = this.documents.get(key);
+		if (document == null)
+		{
+			this.misses ++;
+			return null;
+		}
+		
+		this.hits ++;
+		return document.content;
+	}
+	
+	/**
+	 * Stores a document in the cache. If the cache has been invalidated since the given 
+	 * generation, the document is not stored since it may already be outdated.
+	 * @param key The key the document is stored with
+	 * @param path The path of the entity the document represents
+	 * @param content The document
+	 * @param generation The generation of the cache at the time the document was started
+	 * @see #getGeneration()
+	 */
+	public synchronized void put(String key, String path, byte[] content, long generation)
+	{
+		if (generation != this.generation || content.length > this.maxBytes)
+			return;
+		
+		CachedDocument previous = this.documents.put(key, new CachedDocument(path, content));
+		if (previous != null)
+			this.usedBytes -= previous.content.length;
+		this.usedBytes += content.length;
+		
+		// Drops the least recently used documents until the cache fits its limits
+		Iterator<CachedDocument> iterator = this.documents.values().iterator();
+		while (iterator.hasNext() && (this.documents.size() > this.maxEntries || 
+				this.usedBytes > this.maxBytes))
+		{
+			this.usedBytes -= iterator.next().content.length;
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Removes all documents that may be affected by a change in the entity at the given 
+	 * path. These include the documents of the entity, its ancestors and descendants, as well 
+	 * as those lists ("*") that may contain any of them.
+	 * @param path The path of the entity that was changed
+	 */
+	public synchronized void invalidate(String path)
+	{
+		String[] modified = path.split("/");
+		this.generation ++;
+		
+		Iterator<CachedDocument> iterator = this.documents.values().iterator();
+		while (iterator.hasNext())
+		{
+			CachedDocument document = iterator.next();
+			if (pathsOverlap(modified, document.path))
+			{
+				this.usedBytes -= document.content.length;
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all documents from the cache
+	 */
+	public synchronized void clear()
+	{
+		this.documents.clear();
+		this.usedBytes = 0;
+		this.generation ++;
+	}
+	
+	/**
+	 * Creates a key that can be used for storing and finding a document
+	 * @param path The path of the entity the document represents
+	 * @param format The format of the document
+	 * @param parameters The parameters provided by the client
+	 * @return A key that identifies the document
+	 */
+	public static String createKey(String path, EntityWriterFactory format, 
+			Map<String, String> parameters)
+	{
+		StringBuilder key = new StringBuilder(path);
+		key.append('\n');
+		key.append(format.getName());
+		
+		for (String parameterName : OUTPUT_PARAMETERS)
+		{
+			String value = parameters.get(parameterName);
+			key.append('\n');
+			if (value != null)
+				key.append(value);
+		}
+		
+		return key.toString();
+	}
+	
+	private static boolean pathsOverlap(String[] first, String[] second)
+	{
+		// The paths overlap if one is the start of the other. "*" matches any entity.
+		int length = Math.min(first.length, second.length);
+		for (int i = 0; i < length; i++)
+		{
+			if (!first[i].equals(second[i]) && !first[i].equals("*") && 
+					!second[i].equals("*"))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	
+	// SUBCLASSES	--------------------------------
+	
+	private static class CachedDocument
+	{
+		// ATTRIBUTES	----------------------------
+		
+		private final String[] path;
+		private final byte[] content;
+		
+		
+		// CONSTRUCTOR	----------------------------
+		
+		public CachedDocument(String path, byte[] content)
+		{
+			this.path = path.split("/");
+			this.content = content;
+		}
+	}
+}
@@ -1,10 +1,13 @@
 package nexus_rest;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * SimpleRestData is the most simple form of RestData that can be used along with restEntities
+ * SimpleRestData is the most simple form of RestData that can be used along with restEntities. 
+ * The attributes are replaced with a new unmodifiable copy on each change so that they can 
+ * be read without locking while they are being modified.
  * 
  * @author Mikko Hilpinen
  * @since 19.1.2015
@@ -13,7 +16,7 @@ public class SimpleRestData implements RestData
 {
 	// ATTRIBUTES	---------------------------
 	
-	private Map<String, String> attributes;
+	private volatile Map<String, String> attributes;
 	
 	
 	// CONSTRUCTOR	---------------------------
@@ -23,7 +26,7 @@ public class SimpleRestData implements RestData
 	 */
 	public SimpleRestData()
 	{
-		this.attributes = new HashMap<>();
+		this.attributes = Collections.emptyMap();
 	}
 	
 	
@@ -38,6 +41,8 @@ public class SimpleRestData implements RestData
 	@Override
 	public void setAttribute(String attributeName, String attributeValue)
 	{
-		this.attributes.put(attributeName, attributeValue);
+		Map<String, String> attributes = new HashMap<>(this.attributes);
+		attributes.put(attributeName, attributeValue);
+		this.attributes = Collections.unmodifiableMap(attributes);
 	}
 }
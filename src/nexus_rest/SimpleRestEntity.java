@@ -63,4 +63,12 @@ public class SimpleRestEntity extends RestEntity
 	{
 		return new HashMap<>();
 	}
+	
+	@Override
+	public long getVersion()
+	{
+		// Simple entities don't have any computed content. Subclasses that write content 
+		// through getMissingEntities should return -1 instead.
+		return getTrackedVersion();
+	}
 }
@@ -17,7 +17,10 @@ public abstract class TemporaryRestEntity extends RestEntity
 {
 	// ATTRIBUTES	-------------------------
 	
-	private String rootPath;
+	// The path is computed only once it is needed. Concurrent readers may compute it at the 
+	// same time, but they all end up with the same value.
+	private volatile String rootPath;
+	private final RestEntity pathParent;
 	
 	
 	// CONSTRUCTOR	-------------------------
@@ -35,9 +38,9 @@ public abstract class TemporaryRestEntity extends RestEntity
 	{
 		super(name, content, null);
 		
-		if (parent != null)
-			this.rootPath = parent.getPath() + "/";
-		else
+		// The path is determined only when it is needed
+		this.pathParent = parent;
+		if (parent == null)
 			this.rootPath = "";
 	}
 	
@@ -52,6 +55,7 @@ public abstract class TemporaryRestEntity extends RestEntity
 		super(name, content, null);
 		
 		this.rootPath = rootPath;
+		this.pathParent = null;
 	}
 	
 	
@@ -79,6 +83,13 @@ public abstract class TemporaryRestEntity extends RestEntity
 	 */
 	protected String getRootPath()
 	{
-		return this.rootPath;
+		String rootPath = this.rootPath;
+		if (rootPath == null)
+		{
+			rootPath = this.pathParent.getPath() + "/";
+			this.rootPath = rootPath;
+		}
+		
+		return rootPath;
 	}
 }
@@ -0,0 +1,155 @@
+package nexus_rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import flow_io.XMLIOAccessor;
+
+/**
+ * XmlEntityWriter writes the entities as xml. Each entity is an element whose attributes and 
+ * links are child elements. The links are written as xlink attributes. The xml writers are 
+ * created with a single shared factory since finding and creating a factory takes much 
+ * longer than writing a small document. The document is written through a recycled 
+ * buffer, since the xml writers write only a few bytes at a time.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class XmlEntityWriter implements EntityWriter
+{
+	// ATTRIBUTES	--------------------------------
+	
+	// Creating writers is thread safe once the factory has been configured
+	private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+	
+	private final XMLStreamWriter writer;
+	private final OutputBuffer buffer;
+	private final String serverLink;
+	private final Map<String, String> parameters;
+	
+	
+	// CONSTRUCTOR	--------------------------------
+	
+	/**
+	 * Creates a new writer
+	 * @param output The stream the document is written into
+	 * @param serverLink The server part of the links, containing the server address, the 
+	 * port number and the first "/"
+	 * @param parameters The parameters provided by the client
+	 * @throws IOException If the xml writer couldn't be created
+	 */
+	public XmlEntityWriter(OutputStream output, String serverLink, 
+			Map<String, String> parameters) throws IOException
+	{
+		this.buffer = OutputBuffer.acquire(output);
+		try
+		{
+			this.writer = FACTORY.createXMLStreamWriter(this.buffer, "UTF-8");
+		}
+		catch (XMLStreamException e)
+		{
+			this.buffer.release();
+			throw new IOException("Failed to create an xml writer", e);
+		}
+		this.serverLink = serverLink;
+		this.parameters = parameters;
+	}
+	
+	
+	// IMPLEMENTED METHODS	------------------------
+	
+	@Override
+	public void writeDocumentStart() throws IOException
+	{
+		try
+		{
+			XMLIOAccessor.writeDocumentStart("result", this.writer);
+			XMLIOAccessor.writeXLinkNamespaceIntroduction(this.writer);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void writeDocumentEnd() throws IOException
+	{
+		try
+		{
+			XMLIOAccessor.writeDocumentEnd(this.writer);
+			this.writer.flush();
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void writeEntityStart(RestEntity entity) throws IOException
+	{
+		try
+		{
+			this.writer.writeStartElement(entity.getValidXmlName());
+			entity.writeLinkAsAttribute(this.serverLink, this.writer, this.parameters);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void writeEntityEnd() throws IOException
+	{
+		try
+		{
+			this.writer.writeEndElement();
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void writeAttribute(String name, String value) throws IOException
+	{
+		try
+		{
+			XMLIOAccessor.writeElementWithData(name, value, this.writer);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void writeLink(String name, RestEntity target) throws IOException
+	{
+		try
+		{
+			this.writer.writeStartElement(RestEntity.getValidXmlElementName(name));
+			target.writeLinkAsAttribute(this.serverLink, this.writer, this.parameters);
+			this.writer.writeEndElement();
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void close()
+	{
+		XMLIOAccessor.closeWriter(this.writer);
+		this.buffer.release();
+	}
+}
@@ -0,0 +1,104 @@
+package nexus_test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import nexus_rest.ContentType;
+import nexus_rest.RestContentEntity;
+import nexus_rest.RestEntity;
+import nexus_rest.SimpleRestData;
+import nexus_rest.SimpleRestEntity;
+
+/**
+ * This class compares the size of the documents and the time it takes to write them in 
+ * each content type. The binary types require the Jackson data format libraries.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class ContentTypeBenchmark
+{
+	// ATTRIBUTES	--------------------------
+	
+	private static final String SERVER_LINK = "http://localhost:7777/";
+	private static final int WARMUP_ROUNDS = 20000;
+	private static final int MEASURED_ROUNDS = 50000;
+	
+	
+	// CONSTRUCTOR	--------------------------
+	
+	private ContentTypeBenchmark()
+	{
+		// The constructor is hidden since the interface is static
+	}
+	
+	
+	// MAIN METHOD	--------------------------
+	
+	/**
+	 * Runs the benchmark and prints the results
+	 * @param args Not used
+	 * @throws IOException If a document couldn't be written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		// One document mostly contains links, the other mostly attributes
+		SimpleRestEntity root = new SimpleRestEntity("root", new SimpleRestData(), null);
+		SimpleRestEntity user = null;
+		for (int i = 0; i < 100; i++)
+		{
+			user = new SimpleRestEntity("user" + i, new SimpleRestData(), root);
+		}
+		for (int i = 0; i < 20; i++)
+		{
+			user.setAttribute("attribute" + i, "value number " + (i * 1000));
+		}
+		
+		Map<String, String> parameters = new HashMap<>();
+		for (ContentType contentType : ContentType.values())
+		{
+			run(root, contentType, parameters, WARMUP_ROUNDS);
+			run(user, contentType, parameters, WARMUP_ROUNDS);
+		}
+		
+		for (ContentType contentType : ContentType.values())
+		{
+			measure("Links", root, contentType, parameters);
+		}
+		for (ContentType contentType : ContentType.values())
+		{
+			measure("Attributes", user, contentType, parameters);
+		}
+	}
+	
+	
+	// OTHER METHODS	----------------------
+	
+	private static void measure(String name, RestEntity entity, ContentType contentType, 
+			Map<String, String> parameters) throws IOException
+	{
+		long nanosBefore = System.nanoTime();
+		int size = run(entity, contentType, parameters, MEASURED_ROUNDS);
+		long nanos = System.nanoTime() - nanosBefore;
+		
+		System.out.println(name + " as " + contentType + ": " + size + " bytes, " + 
+				(nanos / MEASURED_ROUNDS) + " ns/op");
+	}
+	
+	private static int run(RestEntity entity, ContentType contentType, 
+			Map<String, String> parameters, int rounds) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RestContentEntity document = new RestContentEntity(entity, SERVER_LINK, contentType, 
+				parameters, false);
+		for (int i = 0; i < rounds; i++)
+		{
+			output.reset();
+			document.writeTo(output);
+		}
+		
+		return output.size();
+	}
+}
@@ -0,0 +1,160 @@
+package nexus_test;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.message.BasicHttpRequest;
+
+import nexus_http.Request;
+
+/**
+ * This class compares the time and memory used for parsing requests with the request parser 
+ * and with the previous implementation that decoded the whole uri and split it with regular 
+ * expressions
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class RequestParserBenchmark
+{
+	// ATTRIBUTES	--------------------------
+	
+	private static final String[] URIS = {"/root/users/1234", 
+			"/root/users/1234/friends?from=10&amount=25&linkType=xml", 
+			"/root/items/*?contentType=json", 
+			"/root/search?query=some+words&filter=%C3%A4%C3%A4kk%C3%B6set&page=2", 
+			"/root"};
+	private static final int WARMUP_ROUNDS = 200000;
+	private static final int MEASURED_ROUNDS = 1000000;
+	
+	private static volatile Object sink;
+	
+	
+	// CONSTRUCTOR	--------------------------
+	
+	private RequestParserBenchmark()
+	{
+		// The constructor is hidden since the interface is static
+	}
+	
+	
+	// MAIN METHOD	--------------------------
+	
+	/**
+	 * Runs the benchmark and prints the results
+	 * @param args Not used
+	 */
+	public static void main(String[] args)
+	{
+		HttpRequest[] requests = new HttpRequest[URIS.length];
+		for (int i = 0; i < URIS.length; i++)
+		{
+			requests[i] = new BasicHttpRequest("GET", URIS[i]);
+		}
+		
+		// Both implementations are warmed up before measuring
+		run(requests, WARMUP_ROUNDS, false);
+		run(requests, WARMUP_ROUNDS, true);
+		
+		for (int i = 0; i < 3; i++)
+		{
+			measure("Previous parser", requests, false);
+			measure("Current parser", requests, true);
+		}
+	}
+	
+	
+	// OTHER METHODS	----------------------
+	
+	private static void measure(String name, HttpRequest[] requests, boolean current)
+	{
+		long bytesBefore = getAllocatedBytes();
+		long nanosBefore = System.nanoTime();
+		run(requests, MEASURED_ROUNDS, current);
+		long nanos = System.nanoTime() - nanosBefore;
+		long bytes = getAllocatedBytes() - bytesBefore;
+		
+		String allocation = "unknown";
+		if (bytesBefore >= 0)
+			allocation = (bytes / MEASURED_ROUNDS) + " bytes/op";
+		System.out.println(name + ": " + (nanos / MEASURED_ROUNDS) + " ns/op, " + allocation);
+	}
+	
+	private static void run(HttpRequest[] requests, int rounds, boolean current)
+	{
+		for (int i = 0; i < rounds; i++)
+		{
+			HttpRequest request = requests[i % requests.length];
+			if (current)
+				sink = new Request(request, true);
+			else
+				sink = parsePreviously(request.getRequestLine().getUri());
+		}
+	}
+	
+	private static long getAllocatedBytes()
+	{
+		// The allocation counter is only available on some virtual machines
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean bean = 
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		
+		return -1;
+	}
+	
+	private static Object[] parsePreviously(String uriAndParameters)
+	{
+		// This is how the requests were parsed before
+		try
+		{
+			uriAndParameters = URLDecoder.decode(uriAndParameters, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			e.printStackTrace();
+		}
+		
+		int parametersStartAt = uriAndParameters.indexOf('?');
+		
+		String pathPart, parameterPart;
+		if (parametersStartAt >= 0)
+		{
+			pathPart = uriAndParameters.substring(0, parametersStartAt);
+			parameterPart = uriAndParameters.substring(parametersStartAt + 1);
+		}
+		else
+		{
+			pathPart = uriAndParameters;
+			parameterPart = new String();
+		}
+		String[] path;
+		if (pathPart.startsWith("/"))
+			path = pathPart.substring(1).split("/");
+		else
+			path = pathPart.split("/");
+		
+		Map<String, String> parameters = new HashMap<>();
+		for (String keyValuePair : parameterPart.split("\\&"))
+		{
+			if (keyValuePair.isEmpty())
+				continue;
+			
+			int keyValueSeparatedAt = keyValuePair.indexOf('=');
+			
+			if (keyValueSeparatedAt >= 0)
+				parameters.put(keyValuePair.substring(0, keyValueSeparatedAt), 
+						keyValuePair.substring(keyValueSeparatedAt + 1));
+			else
+				parameters.put(keyValuePair, new String());
+		}
+		
+		return new Object[] {path, parameters};
+	}
+}
@@ -0,0 +1,126 @@
+package nexus_test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import nexus_rest.ContentType;
+import nexus_rest.RestManager;
+import nexus_rest.RestResponseCache;
+import nexus_rest.SimpleRestData;
+import nexus_rest.SimpleRestEntity;
+
+/**
+ * This class measures the time and memory used by {@link RestManager} for handling GET 
+ * requests for a small entity, including writing the response body. The requests are 
+ * handled in xml and json, with and without a response cache.
+ * 
+ * @author Mikko Hilpinen
+ * @since 17.10.2026
+ */
+public class RestManagerBenchmark
+{
+	// ATTRIBUTES	--------------------------
+	
+	private static final int WARMUP_ROUNDS = 50000;
+	private static final int MEASURED_ROUNDS = 200000;
+	
+	
+	// CONSTRUCTOR	--------------------------
+	
+	private RestManagerBenchmark()
+	{
+		// The constructor is hidden since the interface is static
+	}
+	
+	
+	// MAIN METHOD	--------------------------
+	
+	/**
+	 * Runs the benchmark and prints the results
+	 * @param args Not used
+	 * @throws Exception If a request couldn't be handled
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		SimpleRestEntity root = new SimpleRestEntity("root", new SimpleRestData(), null);
+		SimpleRestEntity users = new SimpleRestEntity("users", new SimpleRestData(), root);
+		SimpleRestEntity user = new SimpleRestEntity("user", new SimpleRestData(), users);
+		user.setAttribute("name", "Test User");
+		user.setAttribute("email", "test.user@example.com");
+		user.setAttribute("age", "32");
+		user.setLink("friend", users);
+		
+		RestManager manager = new RestManager(root, "http://localhost:7777/", false, 
+				ContentType.XML);
+		
+		for (ContentType contentType : new ContentType[] {ContentType.XML, ContentType.JSON})
+		{
+			String uri = "/root/users/user?contentType=" + contentType;
+			run(manager, uri, WARMUP_ROUNDS);
+			measure(contentType + " without cache", manager, uri);
+		}
+		
+		manager.setResponseCache(new RestResponseCache(100, 1024 * 1024));
+		for (ContentType contentType : new ContentType[] {ContentType.XML, ContentType.JSON})
+		{
+			String uri = "/root/users/user?contentType=" + contentType;
+			run(manager, uri, WARMUP_ROUNDS);
+			measure(contentType + " with cache", manager, uri);
+		}
+	}
+	
+	
+	// OTHER METHODS	----------------------
+	
+	private static void measure(String name, RestManager manager, String uri) throws 
+			HttpException, IOException
+	{
+		long bytesBefore = getAllocatedBytes();
+		long nanosBefore = System.nanoTime();
+		run(manager, uri, MEASURED_ROUNDS);
+		long nanos = System.nanoTime() - nanosBefore;
+		long bytes = getAllocatedBytes() - bytesBefore;
+		
+		String allocation = "unknown";
+		if (bytesBefore >= 0)
+			allocation = (bytes / MEASURED_ROUNDS) + " bytes/op";
+		System.out.println(name + ": " + (nanos / MEASURED_ROUNDS) + " ns/op, " + allocation);
+	}
+	
+	private static void run(RestManager manager, String uri, int rounds) throws 
+			HttpException, IOException
+	{
+		HttpContext context = new BasicHttpContext();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (int i = 0; i < rounds; i++)
+		{
+			HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+			manager.handle(new BasicHttpRequest("GET", uri), response, context);
+			
+			output.reset();
+			response.getEntity().writeTo(output);
+		}
+	}
+	
+	private static long getAllocatedBytes()
+	{
+		// The allocation counter is only available on some virtual machines
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean bean = 
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		
+		return -1;
+	}
+}